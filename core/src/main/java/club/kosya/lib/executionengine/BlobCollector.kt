@@ -0,0 +1,46 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.BlobStore
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import java.time.Instant
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
+
+// Refs go away once their execution finishes; the grace period covers blobs written just before their ref is committed
+@Component
+class BlobCollector(
+    private val blobs: BlobStore,
+    private val properties: WorkflowRunrProperties,
+) {
+    private val scheduler =
+        Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("workflow-blob-gc").factory())
+
+    @PostConstruct
+    fun start() {
+        val interval = properties.blobs.gcInterval.toMillis()
+        scheduler.scheduleWithFixedDelay(this::collect, interval, interval, TimeUnit.MILLISECONDS)
+    }
+
+    private fun collect() {
+        try {
+            val deleted = blobs.collect(Instant.now().minus(properties.blobs.gcGracePeriod))
+            if (deleted > 0) {
+                log.info("Deleted unreferenced blobs: count={}", deleted)
+            }
+        } catch (e: Exception) {
+            log.error("Failed to delete unreferenced blobs", e)
+        }
+    }
+
+    @PreDestroy
+    fun stop() {
+        scheduler.shutdownNow()
+    }
+
+    companion object {
+        private val log = LoggerFactory.getLogger(BlobCollector::class.java)
+    }
+}
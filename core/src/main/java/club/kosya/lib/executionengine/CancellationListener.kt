@@ -0,0 +1,84 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.CancellationRegistry
+import club.kosya.lib.executionengine.internal.ExecutionCancelledEvent
+import club.kosya.lib.executionengine.internal.ExecutionSignalsRepository
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.event.TransactionalEventListener
+import org.springframework.transaction.support.TransactionTemplate
+import java.time.Instant
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
+
+// A cancel made on this node reaches the run directly; one made elsewhere arrives through the owner's signal rows
+@Component
+class CancellationListener(
+    private val registry: CancellationRegistry,
+    private val signals: ExecutionSignalsRepository,
+    private val properties: WorkflowRunrProperties,
+    transactionManager: PlatformTransactionManager,
+) {
+    private val transactions = TransactionTemplate(transactionManager)
+    private val scheduler =
+        Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("workflow-signals").factory())
+
+    @PostConstruct
+    fun start() {
+        val interval = properties.cancellation.pollInterval.toMillis()
+        scheduler.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.MILLISECONDS)
+        val cleanupInterval = properties.claim.leaseDuration.toMillis()
+        scheduler.scheduleWithFixedDelay(this::deleteOrphanedSignals, cleanupInterval, cleanupInterval, TimeUnit.MILLISECONDS)
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    fun onExecutionCancelled(event: ExecutionCancelledEvent) {
+        if (registry.cancel(event.executionId)) {
+            log.info("Cancelled running workflow: executionId={}", event.executionId)
+        }
+    }
+
+    // A node running nothing has no one to cancel; signals left for it are removed by the cleanup
+    private fun poll() {
+        if (registry.isEmpty()) {
+            return
+        }
+
+        try {
+            transactions.executeWithoutResult {
+                val received = signals.findByOwnerNode(properties.nodeId)
+                received
+                    .filter { registry.cancel(it.executionId) }
+                    .forEach { log.info("Cancelled running workflow on signal: executionId={}", it.executionId) }
+                if (received.isNotEmpty()) {
+                    signals.deleteByExecutionIds(received.map { it.executionId })
+                }
+            }
+        } catch (e: Exception) {
+            log.error("Failed to poll execution signals", e)
+        }
+    }
+
+    // Signals addressed to a node that died are never consumed; its executions were cancelled anyway
+    private fun deleteOrphanedSignals() {
+        try {
+            transactions.executeWithoutResult {
+                signals.deleteSignalledBefore(Instant.now().minus(properties.claim.leaseDuration))
+            }
+        } catch (e: Exception) {
+            log.error("Failed to delete orphaned execution signals", e)
+        }
+    }
+
+    @PreDestroy
+    fun stop() {
+        scheduler.shutdownNow()
+    }
+
+    companion object {
+        private val log = LoggerFactory.getLogger(CancellationListener::class.java)
+    }
+}
@@ -1,6 +1,7 @@
 package club.kosya.lib.executionengine;
 
 import club.kosya.duraexec.internal.ExecutionResult;
+import club.kosya.lib.executionengine.internal.CancellationToken;
 import java.io.File;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -28,16 +29,39 @@ public class ExecutionContextImpl {
         }
 
         var process = pb.start();
+        var cancellation = CancellationToken.current();
+        if (cancellation != null) {
+            cancellation.track(process);
+        }
 
         var output = new StringBuilder();
-        try (var reader = process.inputReader()) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
+        int exitCode;
+        try {
+            try (var reader = process.inputReader()) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.append(line).append("\n");
+                }
+            }
+            try {
+                exitCode = process.waitFor();
+            } catch (InterruptedException e) {
+                // Cancelling interrupts this thread as it kills the process, so the wait ends before the check below
+                if (cancellation != null) {
+                    cancellation.throwIfCancelled();
+                }
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+        } finally {
+            if (cancellation != null) {
+                cancellation.untrack(process);
             }
         }
 
-        var exitCode = process.waitFor();
+        if (cancellation != null) {
+            cancellation.throwIfCancelled();
+        }
 
         return new ExecutionResult(exitCode, output.toString().trim());
     }
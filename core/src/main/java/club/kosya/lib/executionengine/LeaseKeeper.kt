@@ -0,0 +1,85 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.ExecutionClaimer
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.ObjectProvider
+import org.springframework.stereotype.Component
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
+
+// An execution of a dead node is re-queued at most leaseDuration + reaperInterval after its last heartbeat
+@Component
+class LeaseKeeper(
+    private val claimer: ExecutionClaimer,
+    private val dispatcher: WorkflowDispatcher,
+    private val properties: WorkflowRunrProperties,
+    meterRegistry: ObjectProvider<MeterRegistry>,
+) {
+    private val scheduler =
+        Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("workflow-lease").factory())
+    private val recoveryLag: Timer?
+    private val lostLeases: Counter?
+
+    init {
+        val registry = meterRegistry.ifAvailable
+        recoveryLag =
+            registry?.let {
+                Timer
+                    .builder("workflowrunr.lease.recovery.lag")
+                    .description("Time between a lease expiring and its execution being re-queued")
+                    .register(it)
+            }
+        lostLeases =
+            registry?.let {
+                Counter
+                    .builder("workflowrunr.lease.lost")
+                    .description("In-flight executions whose lease could not be renewed")
+                    .register(it)
+            }
+    }
+
+    @PostConstruct
+    fun start() {
+        val claim = properties.claim
+        scheduler.scheduleWithFixedDelay(this::heartbeat, 0, claim.heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS)
+        scheduler.scheduleWithFixedDelay(this::reap, 0, claim.reaperInterval.toMillis(), TimeUnit.MILLISECONDS)
+    }
+
+    private fun heartbeat() {
+        try {
+            val ids = dispatcher.inFlightIds()
+            val renewed = claimer.renewLeases(ids)
+            if (renewed < ids.size) {
+                log.warn("Lost leases of in-flight executions: inFlight={}, renewed={}", ids.size, renewed)
+                lostLeases?.increment((ids.size - renewed).toDouble())
+            }
+        } catch (e: Exception) {
+            log.error("Failed to renew execution leases", e)
+        }
+    }
+
+    private fun reap() {
+        try {
+            do {
+                val overdue = claimer.requeueExpiredLeases(properties.claim.batchSize)
+                overdue.forEach { recoveryLag?.record(it) }
+            } while (overdue.size == properties.claim.batchSize)
+        } catch (e: Exception) {
+            log.error("Failed to re-queue executions with expired leases", e)
+        }
+    }
+
+    @PreDestroy
+    fun stop() {
+        scheduler.shutdownNow()
+    }
+
+    companion object {
+        private val log = LoggerFactory.getLogger(LeaseKeeper::class.java)
+    }
+}
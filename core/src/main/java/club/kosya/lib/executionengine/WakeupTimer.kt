@@ -0,0 +1,105 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.ExecutionClaimer
+import club.kosya.lib.executionengine.internal.ExecutionsRepository
+import club.kosya.lib.executionengine.internal.HierarchicalTimerWheel
+import club.kosya.lib.executionengine.internal.WakeupScheduledEvent
+import org.slf4j.LoggerFactory
+import org.springframework.context.event.EventListener
+import org.springframework.data.domain.PageRequest
+import org.springframework.stereotype.Component
+import java.time.Instant
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
+
+@Component
+class WakeupTimer(
+    private val executions: ExecutionsRepository,
+    private val claimer: ExecutionClaimer,
+    private val dispatcher: WorkflowDispatcher,
+    properties: WorkflowRunrProperties,
+) {
+    private val settings = properties.timer
+    private val wheel = HierarchicalTimerWheel<Long>(settings.tick.toMillis(), System.currentTimeMillis())
+    private var windowEnd = Instant.EPOCH
+    private var windowEndId = Long.MAX_VALUE
+    private val scheduler =
+        Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("workflow-timer").factory())
+
+    @PostConstruct
+    fun start() {
+        scheduler.scheduleAtFixedRate(this::advance, 0, settings.tick.toMillis(), TimeUnit.MILLISECONDS)
+        scheduler.scheduleWithFixedDelay(this::refreshWindow, 0, settings.refreshInterval.toMillis(), TimeUnit.MILLISECONDS)
+    }
+
+    @EventListener
+    fun onWakeupScheduled(event: WakeupScheduledEvent) {
+        if (event.wakeAt.isAfter(Instant.now().plus(settings.lookahead))) {
+            return
+        }
+
+        synchronized(wheel) {
+            wheel.schedule(event.executionId, event.wakeAt.toEpochMilli())
+        }
+    }
+
+    private fun refreshWindow() {
+        try {
+            val until = Instant.now().plus(settings.lookahead)
+            val wakeups =
+                executions.findWakeupsBetween(windowEnd, windowEndId, until, PageRequest.of(0, settings.preloadLimit))
+
+            synchronized(wheel) {
+                wakeups.forEach { wheel.schedule(it.id, it.wakeAt.toEpochMilli()) }
+            }
+            // A full page resumes after its last (wakeAt, id), so rows sharing that wakeAt are not skipped
+            if (wakeups.size == settings.preloadLimit) {
+                windowEnd = wakeups.last().wakeAt
+                windowEndId = wakeups.last().id
+            } else {
+                windowEnd = until
+                windowEndId = Long.MAX_VALUE
+            }
+
+            log.debug("Wakeup window refreshed: until={}, loaded={}, scheduled={}", windowEnd, wakeups.size, wheel.size)
+        } catch (e: Exception) {
+            log.error("Failed to refresh wakeup window", e)
+        }
+    }
+
+    private fun advance() {
+        try {
+            val due = synchronized(wheel) { wheel.advanceTo(System.currentTimeMillis()) }
+            if (due.isEmpty()) {
+                return
+            }
+
+            var offered = emptyList<Long>()
+            dispatcher.dispatchClaimed(due.size, isResume = true) { limit ->
+                offered = due.take(limit)
+                claimer.claimDueSleepers(offered)
+            }
+
+            val deferred = due.drop(offered.size)
+            if (deferred.isNotEmpty()) {
+                val retryAt = System.currentTimeMillis() + settings.retryDelay.toMillis()
+                synchronized(wheel) {
+                    deferred.forEach { wheel.schedule(it, retryAt) }
+                }
+            }
+        } catch (e: Exception) {
+            log.error("Failed to dispatch due wakeups", e)
+        }
+    }
+
+    @PreDestroy
+    fun stop() {
+        scheduler.shutdownNow()
+    }
+
+    companion object {
+        private val log = LoggerFactory.getLogger(WakeupTimer::class.java)
+    }
+}
@@ -0,0 +1,145 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.ExecutionControl
+import club.kosya.lib.executionengine.internal.VirtualThreadPinningMonitor
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.annotation.PreDestroy
+
+@Component
+class WorkflowDispatcher(
+    private val workflowExecutor: WorkflowExecutor,
+    private val control: ExecutionControl,
+    private val properties: WorkflowRunrProperties,
+) {
+    private val slots = Semaphore(properties.dispatcher.maxConcurrency)
+    private val inFlight = ConcurrentHashMap<Long, AtomicBoolean>()
+    private val pinningMonitor =
+        if (properties.dispatcher.virtualThreads) {
+            VirtualThreadPinningMonitor(properties.dispatcher.pinningThreshold)
+        } else {
+            null
+        }
+    private val executor: ExecutorService =
+        if (properties.dispatcher.virtualThreads) {
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("workflow-vthread-", 0).factory())
+        } else {
+            Executors.newFixedThreadPool(
+                properties.dispatcher.maxConcurrency,
+                Thread.ofPlatform().name("workflow-worker-", 0).factory(),
+            )
+        }
+
+    fun dispatchClaimed(
+        maxBatch: Int,
+        isResume: Boolean,
+        claim: (limit: Int) -> List<Long>,
+    ): Int {
+        if (control.isDraining) {
+            return 0
+        }
+
+        val reserved = reserve(maxBatch)
+        if (reserved == 0) {
+            return 0
+        }
+
+        val ids =
+            try {
+                claim(reserved)
+            } catch (e: Exception) {
+                slots.release(reserved)
+                throw e
+            }
+
+        val started = ids.filter { startOrRequestRerun(it) }
+        slots.release(reserved - started.size)
+        started.forEach { submit(it, isResume) }
+        return started.size
+    }
+
+    fun inFlightIds(): List<Long> = inFlight.keys.toList()
+
+    // Holding every slot means nothing is running; returns what is still in flight when the timeout hits
+    fun awaitIdle(timeout: Duration): List<Long> {
+        val maxConcurrency = properties.dispatcher.maxConcurrency
+        if (slots.tryAcquire(maxConcurrency, timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            slots.release(maxConcurrency)
+            return emptyList()
+        }
+        return inFlightIds()
+    }
+
+    private fun reserve(maxBatch: Int): Int {
+        while (true) {
+            val wanted = minOf(slots.availablePermits(), maxBatch)
+            if (wanted <= 0) {
+                return 0
+            }
+            if (slots.tryAcquire(wanted)) {
+                return wanted
+            }
+        }
+    }
+
+    // A claimed execution that is still finishing its previous run (e.g. a very short sleep) runs again right after it
+    private fun startOrRequestRerun(executionId: Long): Boolean {
+        var started = false
+        inFlight.compute(executionId) { _, rerun ->
+            if (rerun == null) {
+                started = true
+                AtomicBoolean(false)
+            } else {
+                rerun.set(true)
+                rerun
+            }
+        }
+        return started
+    }
+
+    private fun finishOrTakeRerun(executionId: Long): Boolean =
+        inFlight.compute(executionId) { _, rerun ->
+            if (rerun != null && rerun.getAndSet(false)) rerun else null
+        } != null
+
+    private fun submit(
+        executionId: Long,
+        isResume: Boolean,
+    ) {
+        try {
+            executor.execute {
+                var resume = isResume
+                do {
+                    try {
+                        workflowExecutor.execute(executionId, resume)
+                    } catch (e: Exception) {
+                        log.error("Dispatched execution failed: executionId={}", executionId, e)
+                    }
+                    resume = true
+                } while (finishOrTakeRerun(executionId))
+                slots.release()
+            }
+        } catch (e: Exception) {
+            inFlight.remove(executionId)
+            slots.release()
+            log.error("Failed to dispatch execution: executionId={}", executionId, e)
+        }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        executor.shutdown()
+        pinningMonitor?.close()
+    }
+
+    companion object {
+        private val log = LoggerFactory.getLogger(WorkflowDispatcher::class.java)
+    }
+}
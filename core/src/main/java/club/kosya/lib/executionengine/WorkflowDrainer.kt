@@ -0,0 +1,43 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.ExecutionClaimer
+import club.kosya.lib.executionengine.internal.ExecutionControl
+import org.slf4j.LoggerFactory
+import org.springframework.context.SmartLifecycle
+import org.springframework.stereotype.Component
+
+// Running workflows yield at their next action; whatever is still running at the timeout is released and fenced off
+@Component
+class WorkflowDrainer(
+    private val control: ExecutionControl,
+    private val dispatcher: WorkflowDispatcher,
+    private val claimer: ExecutionClaimer,
+    private val properties: WorkflowRunrProperties,
+) : SmartLifecycle {
+    @Volatile
+    private var running = false
+
+    override fun start() {
+        running = true
+    }
+
+    override fun stop() {
+        val timeout = properties.shutdown.drainTimeout
+        log.info("Draining workflows: inFlight={}, timeout={}", dispatcher.inFlightIds().size, timeout)
+        control.startDraining()
+
+        val remaining = dispatcher.awaitIdle(timeout)
+        if (remaining.isNotEmpty()) {
+            val released = claimer.release(remaining)
+            log.warn("Drain timed out, released executions to the queue: inFlight={}, released={}", remaining.size, released)
+        }
+
+        running = false
+    }
+
+    override fun isRunning(): Boolean = running
+
+    companion object {
+        private val log = LoggerFactory.getLogger(WorkflowDrainer::class.java)
+    }
+}
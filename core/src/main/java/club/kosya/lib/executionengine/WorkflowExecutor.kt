@@ -1,86 +1,101 @@
 package club.kosya.lib.executionengine
 
 import club.kosya.lib.deserialization.internal.ObjectDeserializerImpl
+import club.kosya.lib.executionengine.internal.BlobStore
+import club.kosya.lib.executionengine.internal.CancellationRegistry
+import club.kosya.lib.executionengine.internal.CancellationToken
+import club.kosya.lib.executionengine.internal.Execution
 import club.kosya.lib.executionengine.internal.ExecutionContextImpl
-import club.kosya.lib.executionengine.internal.ExecutionsRepository
+import club.kosya.lib.executionengine.internal.ExecutionControl
+import club.kosya.lib.executionengine.internal.ExecutionUnitOfWork
+import club.kosya.lib.executionengine.internal.JournalFlowStore
+import club.kosya.lib.executionengine.internal.LeaseLostException
+import club.kosya.lib.executionengine.internal.ParallelBranchRunner
+import club.kosya.lib.executionengine.internal.RateLimiter
+import club.kosya.lib.executionengine.internal.SleepListener
+import club.kosya.lib.executionengine.internal.WakeupScheduledEvent
+import club.kosya.lib.executionengine.internal.WarmContext
+import club.kosya.lib.executionengine.internal.WarmContextCache
 import club.kosya.lib.executionengine.internal.WorkflowCanceledException
+import club.kosya.lib.executionengine.internal.WorkflowDrainedException
 import club.kosya.lib.executionengine.internal.WorkflowSuspendedException
 import club.kosya.lib.workflow.ServiceInstanceProvider
 import club.kosya.lib.workflow.WorkflowDefinition
+import club.kosya.lib.workflow.internal.PreparedWorkflow
 import club.kosya.lib.workflow.internal.WorkflowReconstructor
 import com.fasterxml.jackson.databind.ObjectMapper
 import org.slf4j.LoggerFactory
-import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.context.ApplicationEventPublisher
 import org.springframework.stereotype.Component
 import java.lang.reflect.InvocationTargetException
-import java.time.Instant
-import java.time.LocalDateTime
 
 @Component
 class WorkflowExecutor(
     private val objectMapper: ObjectMapper,
-    private val executions: ExecutionsRepository,
+    private val eventPublisher: ApplicationEventPublisher,
+    private val control: ExecutionControl,
+    private val rateLimiter: RateLimiter,
+    private val flowStore: JournalFlowStore,
+    private val cancellations: CancellationRegistry,
+    private val blobs: BlobStore,
+    private val warmCache: WarmContextCache,
+    private val branchRunner: ParallelBranchRunner,
     instanceProvider: ServiceInstanceProvider,
 ) {
     private val objectDeserializer = ObjectDeserializerImpl(objectMapper)
     private val workflowReconstructor = WorkflowReconstructor(instanceProvider, objectDeserializer)
 
-    @Scheduled(fixedDelay = 1000L)
-    fun tick() {
-        executions.findByStatus(ExecutionStatus.Queued).forEach { wf ->
-            execute(wf.id, isResume = false)
-        }
-
-        executions.findRunnableByWakeAtLessThanEqual(Instant.now()).forEach { wf ->
-            log.info("Resuming sleeping workflow: executionId={}", wf.id)
-            execute(wf.id, isResume = true)
-        }
-    }
-
-    private fun execute(
+    fun execute(
         executionId: Long,
         isResume: Boolean = false,
     ) {
-        var execution = executions.findById(executionId).get()
-        log.info("Executing workflow: executionId={}, isResume={}", execution.id, isResume)
-
-        if (execution.status == ExecutionStatus.Queued) {
-            execution.status = ExecutionStatus.Running
-            execution.startedAt = LocalDateTime.now()
+        val warm = warmCache.take(executionId)
+        val reopened = warm?.let { flowStore.reopen(it.execution, it.flow) }
+        val unitOfWork = reopened ?: flowStore.open(executionId)
+        if (unitOfWork == null) {
+            log.warn("Execution not found: executionId={}", executionId)
+            return
         }
 
-        // Clear wakeAt if resuming from sleep
-        if (isResume) {
-            execution.wakeAt = null
+        val cancellation = cancellations.open(executionId)
+        try {
+            run(unitOfWork, warm?.workflow?.takeIf { reopened != null }, isResume, cancellation)
+        } finally {
+            cancellations.close(cancellation)
         }
+    }
 
-        executions.save(execution)
+    private fun run(
+        unitOfWork: ExecutionUnitOfWork,
+        warmWorkflow: PreparedWorkflow?,
+        isResume: Boolean,
+        cancellation: CancellationToken,
+    ) {
+        val execution = unitOfWork.execution
+        log.info("Executing workflow: executionId={}, isResume={}, warm={}", execution.id, isResume, warmWorkflow != null)
 
+        var workflow: PreparedWorkflow? = null
+        var executionContext: ExecutionContextImpl? = null
         try {
-            val definitionJson = String(execution.definition)
-            val definition = objectMapper.readValue(definitionJson, WorkflowDefinition::class.java)
+            val prepared = warmWorkflow ?: prepare(execution)
+            workflow = prepared
 
-            log.info(
-                "Workflow definition: beanClass={}, method={}, params={}",
-                definition.serviceIdentifier.className,
-                definition.methodName,
-                definition.parameters,
-            )
-
-            val executionContext =
+            val context =
                 ExecutionContextImpl(
                     execution.id.toString(),
+                    unitOfWork,
                     objectMapper,
-                    executions,
                     objectDeserializer,
+                    SleepListener { id, wakeAt -> eventPublisher.publishEvent(WakeupScheduledEvent(id, wakeAt)) },
+                    control,
+                    rateLimiter,
+                    branchRunner,
                 )
+            executionContext = context
 
-            val result = workflowReconstructor.reconstructAndExecute(definition) { executionContext }
+            val result = workflowReconstructor.execute(prepared) { context }
 
-            execution = executions.findById(execution.id).get()
-            execution.status = ExecutionStatus.Completed
-            execution.completedAt = LocalDateTime.now()
-            executions.save(execution)
+            context.finish(ExecutionStatus.Completed)
 
             log.info(
                 "Workflow completed successfully: executionId={}, result={}",
@@ -88,34 +103,103 @@ class WorkflowExecutor(
                 result,
             )
         } catch (e: WorkflowSuspendedException) {
-            log.info("Workflow suspended (sleeping): executionId=${execution.id}, reason=${e.message}")
+            suspended(execution, workflow, executionContext, e)
             return
         } catch (e: WorkflowCanceledException) {
             log.info("Workflow was cancelled during execution: executionId=${execution.id}")
             return
+        } catch (e: LeaseLostException) {
+            log.warn("Workflow lease lost, abandoning execution: executionId=${execution.id}, reason=${e.message}")
+            return
+        } catch (e: WorkflowDrainedException) {
+            releaseToQueue(unitOfWork, executionContext)
+            return
         } catch (e: InvocationTargetException) {
             val cause = e.cause
             if (cause is WorkflowSuspendedException) {
-                log.info("Workflow suspended (sleeping): executionId=${execution.id}, reason=${cause.message}")
+                suspended(execution, workflow, executionContext, cause)
                 return
             }
             if (cause is WorkflowCanceledException) {
                 log.info("Workflow was cancelled during execution: executionId=${execution.id}")
                 return
             }
+            if (cause is LeaseLostException) {
+                log.warn("Workflow lease lost, abandoning execution: executionId=${execution.id}, reason=${cause.message}")
+                return
+            }
+            if (cause is WorkflowDrainedException) {
+                releaseToQueue(unitOfWork, executionContext)
+                return
+            }
+            if (cancellation.isCancelled) {
+                log.info("Workflow was cancelled during execution: executionId=${execution.id}")
+                return
+            }
             log.error("Workflow execution failed: executionId=${execution.id}", e)
-            execution.status = ExecutionStatus.Failed
-            execution.completedAt = LocalDateTime.now()
-            executions.save(execution)
+            markFailed(unitOfWork, executionContext)
             throw RuntimeException("Workflow execution failed", e)
         } catch (e: Exception) {
+            if (cancellation.isCancelled) {
+                log.info("Workflow was cancelled during execution: executionId=${execution.id}")
+                return
+            }
             log.error("Workflow execution failed: executionId=${execution.id}", e)
+            markFailed(unitOfWork, executionContext)
+            throw RuntimeException("Workflow execution failed", e)
+        }
+    }
 
-            execution.status = ExecutionStatus.Failed
-            execution.completedAt = LocalDateTime.now()
-            executions.save(execution)
+    private fun prepare(execution: Execution): PreparedWorkflow {
+        val definitionJson = String(execution.definition)
+        val definition = objectMapper.readValue(definitionJson, WorkflowDefinition::class.java)
 
-            throw RuntimeException("Workflow execution failed", e)
+        log.info(
+            "Workflow definition: beanClass={}, method={}, params={}",
+            definition.serviceIdentifier.className,
+            definition.methodName,
+            definition.parameters,
+        )
+
+        definition.parameters
+            .filter { it.blobRef != null }
+            .forEach { it.value = blobs.read(it.blobRef) }
+
+        return workflowReconstructor.prepare(definition)
+    }
+
+    private fun suspended(
+        execution: Execution,
+        workflow: PreparedWorkflow?,
+        executionContext: ExecutionContextImpl?,
+        e: WorkflowSuspendedException,
+    ) {
+        log.info("Workflow suspended (sleeping): executionId=${execution.id}, reason=${e.message}")
+        if (workflow != null && executionContext != null) {
+            warmCache.put(WarmContext(execution, workflow, executionContext.flow))
+        }
+    }
+
+    private fun releaseToQueue(
+        unitOfWork: ExecutionUnitOfWork,
+        executionContext: ExecutionContextImpl?,
+    ) {
+        log.info("Workflow released to the queue for node shutdown: executionId={}", unitOfWork.execution.id)
+        if (executionContext == null) {
+            unitOfWork.releaseToQueue()
+        } else {
+            executionContext.releaseToQueue()
+        }
+    }
+
+    private fun markFailed(
+        unitOfWork: ExecutionUnitOfWork,
+        executionContext: ExecutionContextImpl?,
+    ) {
+        if (executionContext == null) {
+            unitOfWork.finish(ExecutionStatus.Failed)
+        } else {
+            executionContext.finish(ExecutionStatus.Failed)
         }
     }
 
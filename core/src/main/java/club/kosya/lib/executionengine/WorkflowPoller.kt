@@ -0,0 +1,135 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.AdaptivePollingInterval
+import club.kosya.lib.executionengine.internal.ExecutionClaimer
+import club.kosya.lib.executionengine.internal.ExecutionQueuedEvent
+import club.kosya.lib.executionengine.internal.WakeupScheduledEvent
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.ObjectProvider
+import org.springframework.context.event.EventListener
+import org.springframework.stereotype.Component
+import org.springframework.transaction.event.TransactionalEventListener
+import java.time.Instant
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
+
+@Component
+class WorkflowPoller(
+    private val claimer: ExecutionClaimer,
+    private val dispatcher: WorkflowDispatcher,
+    private val properties: WorkflowRunrProperties,
+    meterRegistry: ObjectProvider<MeterRegistry>,
+) {
+    private val interval =
+        AdaptivePollingInterval(
+            properties.poller.minInterval,
+            properties.poller.maxInterval,
+            properties.poller.backoffMultiplier,
+        )
+    private val scheduler =
+        Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("workflow-poller").factory())
+    private var nextPoll: ScheduledFuture<*>? = null
+    private var nextPollAt = Instant.MIN
+
+    init {
+        meterRegistry.ifAvailable {
+            Gauge
+                .builder("workflowrunr.poller.interval", interval) { it.current.toMillis().toDouble() }
+                .baseUnit("milliseconds")
+                .description("Current delay between polls for queued and due executions")
+                .register(it)
+        }
+    }
+
+    @PostConstruct
+    fun start() {
+        schedulePoll(0)
+    }
+
+    private fun tick(): Int {
+        val batchSize = properties.claim.batchSize
+
+        val queued =
+            dispatcher.dispatchClaimed(batchSize, isResume = false) { limit ->
+                claimer.claimQueued(limit)
+            }
+
+        val sleepers =
+            dispatcher.dispatchClaimed(batchSize, isResume = true) { limit ->
+                claimer.claimDueSleepers(limit)
+            }
+
+        return queued + sleepers
+    }
+
+    private fun poll() {
+        try {
+            if (tick() > 0) {
+                interval.onWorkFound()
+            } else {
+                interval.onIdle()
+            }
+        } catch (e: Exception) {
+            log.error("Polling for executions failed", e)
+            interval.onIdle()
+        }
+
+        synchronized(this) {
+            nextPoll = null
+            schedulePoll(interval.current.toMillis())
+        }
+    }
+
+    // Keeps at most one pending poll, moving it earlier when a shorter delay is requested
+    @Synchronized
+    private fun schedulePoll(delayMillis: Long) {
+        val at = Instant.now().plusMillis(delayMillis)
+        if (nextPoll != null && !at.isBefore(nextPollAt)) {
+            return
+        }
+
+        nextPoll?.cancel(false)
+        nextPollAt = at
+        nextPoll = scheduler.schedule(this::poll, delayMillis, TimeUnit.MILLISECONDS)
+    }
+
+    private fun speedUp() {
+        interval.onWorkFound()
+        schedulePoll(interval.current.toMillis())
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    fun onExecutionQueued(event: ExecutionQueuedEvent) {
+        try {
+            dispatcher.dispatchClaimed(1, isResume = false) {
+                claimer.claimQueued(event.workflowType, listOf(event.executionId))
+            }
+        } catch (e: Exception) {
+            log.warn("Local dispatch failed, leaving execution to the poller: executionId={}", event.executionId, e)
+        }
+        speedUp()
+    }
+
+    // Most sleeps end after the next poll and are dispatched by the wakeup timer, so only earlier ones reset the backoff
+    @EventListener
+    fun onWakeupScheduled(event: WakeupScheduledEvent) {
+        val dueBeforeNextPoll = synchronized(this) { event.wakeAt.isBefore(nextPollAt) }
+        if (dueBeforeNextPoll) {
+            speedUp()
+        }
+    }
+
+    @PreDestroy
+    fun stop() {
+        scheduler.shutdownNow()
+    }
+
+    companion object {
+        private val log = LoggerFactory.getLogger(WorkflowPoller::class.java)
+    }
+}
@@ -0,0 +1,137 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.FlowStateFormat
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.stereotype.Component
+import java.lang.management.ManagementFactory
+import java.time.Duration
+
+@Component
+@ConfigurationProperties(prefix = "workflowrunr")
+class WorkflowRunrProperties {
+    var nodeId: String = ManagementFactory.getRuntimeMXBean().name
+
+    val claim = Claim()
+
+    val dispatcher = Dispatcher()
+
+    val timer = Timer()
+
+    val checkpoints = Checkpoints()
+
+    val branches = Branches()
+
+    val blobs = Blobs()
+
+    val compression = Compression()
+
+    val poller = Poller()
+
+    val restore = Restore()
+
+    val shutdown = Shutdown()
+
+    val state = State()
+
+    val cancellation = Cancellation()
+
+    val warmCache = WarmCache()
+
+    val queues: MutableMap<String, Queue> = mutableMapOf()
+
+    val rateLimits = RateLimits()
+
+    class Claim {
+        var batchSize: Int = 100
+        var leaseDuration: Duration = Duration.ofSeconds(30)
+        var heartbeatInterval: Duration = Duration.ofSeconds(10)
+        var reaperInterval: Duration = Duration.ofSeconds(10)
+    }
+
+    class Blobs {
+        // Length of the serialized value, in characters
+        var offloadThreshold: Int = 64 * 1024
+        var gcInterval: Duration = Duration.ofHours(1)
+        var gcGracePeriod: Duration = Duration.ofHours(1)
+    }
+
+    class Branches {
+        // Branches of one fan-out that run at the same time
+        var parallelism: Int = Runtime.getRuntime().availableProcessors()
+    }
+
+    class Cancellation {
+        var pollInterval: Duration = Duration.ofSeconds(1)
+    }
+
+    class Checkpoints {
+        var linger: Duration = Duration.ofMillis(2)
+        var maxBatch: Int = 500
+
+        // Times a batch is tried when it hits a lock timeout or deadlock
+        var flushAttempts: Int = 3
+    }
+
+    class Compression {
+        // Payloads smaller than this many bytes are stored as they are
+        var threshold: Int = 1024
+        var codec: String = "deflate"
+    }
+
+    class Dispatcher {
+        var maxConcurrency: Int = Runtime.getRuntime().availableProcessors()
+        var virtualThreads: Boolean = false
+        var pinningThreshold: Duration = Duration.ofMillis(20)
+    }
+
+    class Queue {
+        var maxConcurrency: Int? = null
+        var weight: Int = 1
+    }
+
+    class Poller {
+        var minInterval: Duration = Duration.ofMillis(200)
+        var maxInterval: Duration = Duration.ofSeconds(30)
+        var backoffMultiplier: Double = 2.0
+    }
+
+    class RateLimits {
+        val workflows: MutableMap<String, RateLimit> = mutableMapOf()
+        val actions: MutableMap<String, RateLimit> = mutableMapOf()
+    }
+
+    class RateLimit {
+        var permits: Int = 1
+        var period: Duration = Duration.ofSeconds(1)
+        var burst: Int? = null
+    }
+
+    class Restore {
+        // Stored results larger than this many bytes are left out of the restored flow until their action is replayed
+        var inlineResultLimit: Int = 4 * 1024
+    }
+
+    class Shutdown {
+        var drainTimeout: Duration = Duration.ofSeconds(30)
+    }
+
+    class State {
+        // Format legacy flow snapshots are rewritten in when the journal store restores them
+        var format: FlowStateFormat = FlowStateFormat.JSON
+    }
+
+    class Timer {
+        var tick: Duration = Duration.ofMillis(10)
+        var lookahead: Duration = Duration.ofMinutes(1)
+        var refreshInterval: Duration = Duration.ofSeconds(15)
+        var preloadLimit: Int = 10_000
+        var retryDelay: Duration = Duration.ofMillis(200)
+    }
+
+    class WarmCache {
+        var maxEntries: Int = 1000
+
+        // Approximate bytes of definitions and stored results held by cached contexts
+        var maxWeight: Long = 64L * 1024 * 1024
+    }
+}
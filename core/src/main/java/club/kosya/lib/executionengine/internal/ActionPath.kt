@@ -0,0 +1,38 @@
+package club.kosya.lib.executionengine.internal
+
+// Counters live in a primitive array and the dotted prefix of each level is rendered once when the level is entered,
+// so generating an id costs a single string concatenation
+class ActionPath {
+    private var counters = IntArray(INITIAL_DEPTH)
+    private var prefixes = arrayOfNulls<String>(INITIAL_DEPTH)
+    private var depth = 0
+
+    fun next(): String {
+        val counter = counters[depth]++
+        return if (depth == 0) counter.toString() else prefixes[depth] + counter
+    }
+
+    // Nests the following ids under the id returned by the last call to next()
+    fun enter() {
+        check(counters[depth] > 0) { "No action to nest under" }
+
+        if (depth + 1 == counters.size) {
+            counters = counters.copyOf(counters.size * 2)
+            prefixes = prefixes.copyOf(prefixes.size * 2)
+        }
+
+        val parent = counters[depth] - 1
+        prefixes[depth + 1] = if (depth == 0) "$parent." else "${prefixes[depth]}$parent."
+        depth++
+        counters[depth] = 0
+    }
+
+    fun exit() {
+        check(depth > 0) { "Already at the root level" }
+        depth--
+    }
+
+    companion object {
+        private const val INITIAL_DEPTH = 4
+    }
+}
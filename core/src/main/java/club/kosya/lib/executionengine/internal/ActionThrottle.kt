@@ -0,0 +1,13 @@
+package club.kosya.lib.executionengine.internal
+
+import java.time.Duration
+
+fun interface ActionThrottle {
+    // Takes a permit for the action, or returns how long to wait before one becomes available
+    fun acquire(actionName: String): Duration
+
+    companion object {
+        @JvmField
+        val NONE = ActionThrottle { Duration.ZERO }
+    }
+}
@@ -0,0 +1,22 @@
+package club.kosya.lib.executionengine.internal
+
+import java.time.Duration
+
+class AdaptivePollingInterval(
+    private val min: Duration,
+    private val max: Duration,
+    private val backoffMultiplier: Double,
+) {
+    @Volatile
+    var current: Duration = min
+        private set
+
+    fun onWorkFound() {
+        current = min
+    }
+
+    fun onIdle() {
+        val next = Duration.ofMillis((current.toMillis() * backoffMultiplier).toLong())
+        current = if (next > max) max else next
+    }
+}
@@ -0,0 +1,64 @@
+package club.kosya.lib.executionengine.internal
+
+import club.kosya.lib.executionengine.WorkflowRunrProperties
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.stereotype.Component
+import java.security.MessageDigest
+import java.sql.Timestamp
+import java.time.Instant
+import java.util.HexFormat
+
+// Large payloads are stored once per distinct content and referenced by hash; each execution using one holds a ref row
+@Component
+class BlobStore(
+    private val jdbcTemplate: JdbcTemplate,
+    private val codec: PayloadCodec,
+    properties: WorkflowRunrProperties,
+) {
+    private val settings = properties.blobs
+
+    fun shouldOffload(content: String?): Boolean = content != null && content.length >= settings.offloadThreshold
+
+    fun write(content: String): String {
+        val hash = hash(content)
+        jdbcTemplate.update(UPSERT_BLOB, hash, codec.encodeText(content), Timestamp.from(Instant.now()))
+        return hash
+    }
+
+    fun link(
+        executionId: Long,
+        hashes: Collection<String>,
+    ) {
+        hashes.forEach { jdbcTemplate.update(INSERT_REF, executionId, it) }
+    }
+
+    fun read(hash: String): String = codec.decodeText(jdbcTemplate.queryForObject(SELECT_BLOB, ByteArray::class.java, hash))!!
+
+    // Executions that reached a terminal state give up their refs first, so their blobs are collected in the same pass
+    fun collect(before: Instant): Int {
+        jdbcTemplate.update(RELEASE_FINISHED)
+        return jdbcTemplate.update(DELETE_UNREFERENCED, Timestamp.from(before))
+    }
+
+    private fun hash(content: String): String = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content.toByteArray()))
+
+    companion object {
+        // Rewriting created_at keeps a blob that is being reused out of the collector's reach
+        private const val UPSERT_BLOB =
+            "INSERT INTO execution_blobs (hash, content, created_at) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE created_at = VALUES(created_at)"
+
+        private const val INSERT_REF =
+            "INSERT INTO execution_blob_refs (execution_id, hash) VALUES (?, ?) ON DUPLICATE KEY UPDATE hash = hash"
+
+        private const val SELECT_BLOB = "SELECT content FROM execution_blobs WHERE hash = ?"
+
+        private const val RELEASE_FINISHED =
+            "DELETE r FROM execution_blob_refs r JOIN executions e ON e.id = r.execution_id " +
+                "WHERE e.status IN ('Completed', 'Failed', 'Cancelled')"
+
+        private const val DELETE_UNREFERENCED =
+            "DELETE b FROM execution_blobs b LEFT JOIN execution_blob_refs r ON r.hash = b.hash " +
+                "WHERE r.hash IS NULL AND b.created_at < ?"
+    }
+}
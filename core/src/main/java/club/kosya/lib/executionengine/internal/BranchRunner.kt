@@ -0,0 +1,22 @@
+package club.kosya.lib.executionengine.internal
+
+fun interface BranchRunner {
+    // Runs every branch, then rethrows the first failure in branch order
+    fun runAll(branches: List<Runnable>)
+
+    companion object {
+        @JvmField
+        val SEQUENTIAL =
+            BranchRunner { branches ->
+                var failure: Throwable? = null
+                branches.forEach {
+                    try {
+                        it.run()
+                    } catch (e: Throwable) {
+                        failure = failure ?: e
+                    }
+                }
+                failure?.let { throw it }
+            }
+    }
+}
@@ -0,0 +1,24 @@
+package club.kosya.lib.executionengine.internal
+
+import org.springframework.stereotype.Component
+import java.util.concurrent.ConcurrentHashMap
+
+@Component
+class CancellationRegistry {
+    private val active = ConcurrentHashMap<Long, CancellationToken>()
+
+    fun open(executionId: Long): CancellationToken = CancellationToken.bind(executionId).also { active[executionId] = it }
+
+    fun close(token: CancellationToken) {
+        active.remove(token.executionId, token)
+        token.close()
+    }
+
+    fun isEmpty(): Boolean = active.isEmpty()
+
+    fun cancel(executionId: Long): Boolean {
+        val token = active[executionId] ?: return false
+        token.cancel()
+        return true
+    }
+}
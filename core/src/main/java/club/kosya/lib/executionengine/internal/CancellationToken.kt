@@ -0,0 +1,112 @@
+package club.kosya.lib.executionengine.internal
+
+import java.util.function.Supplier
+
+// Cancelling kills every process tree the run started and interrupts the threads running its action code, so a blocked
+// action returns promptly. A thread inside a checkpoint or other JDBC call is left alone: on a virtual thread the
+// interrupt would close the socket and break the pooled connection mid-statement
+class CancellationToken(
+    val executionId: Long,
+) {
+    private val processes = HashSet<Process>()
+    private val inAction = HashSet<Thread>()
+    private var closed = false
+
+    @Volatile
+    var isCancelled = false
+        private set
+
+    @Synchronized
+    fun cancel() {
+        if (closed || isCancelled) {
+            return
+        }
+
+        isCancelled = true
+        processes.forEach { destroyTree(it) }
+        inAction.forEach { it.interrupt() }
+    }
+
+    fun <R> interruptibly(action: Supplier<R>): R {
+        enterAction()
+        try {
+            return action.get()
+        } finally {
+            exitAction()
+        }
+    }
+
+    @Synchronized
+    fun track(process: Process) {
+        if (isCancelled) {
+            destroyTree(process)
+        } else {
+            processes.add(process)
+        }
+    }
+
+    @Synchronized
+    fun untrack(process: Process) {
+        processes.remove(process)
+    }
+
+    @Synchronized
+    private fun enterAction() {
+        inAction.add(Thread.currentThread())
+        if (isCancelled) {
+            Thread.currentThread().interrupt()
+        }
+    }
+
+    // An interrupt meant for the action must not outlive it and reach the writes that follow
+    @Synchronized
+    private fun exitAction() {
+        inAction.remove(Thread.currentThread())
+        if (isCancelled) {
+            Thread.interrupted()
+        }
+    }
+
+    fun throwIfCancelled() {
+        if (isCancelled) {
+            throw WorkflowCanceledException("Workflow $executionId was cancelled")
+        }
+    }
+
+    // Called on the worker thread, which goes back to the pool without a pending interrupt meant for this run
+    @Synchronized
+    fun close() {
+        closed = true
+        processes.clear()
+        inAction.clear()
+        current.remove()
+        Thread.interrupted()
+    }
+
+    companion object {
+        private val current = ThreadLocal<CancellationToken>()
+
+        @JvmStatic
+        fun current(): CancellationToken? = current.get()
+
+        fun bind(executionId: Long): CancellationToken = CancellationToken(executionId).also { current.set(it) }
+
+        // Lets a branch running on another thread stop at its next action once the run is cancelled
+        fun runAs(
+            token: CancellationToken?,
+            block: Runnable,
+        ) {
+            current.set(token)
+            try {
+                block.run()
+            } finally {
+                current.remove()
+            }
+        }
+
+        private fun destroyTree(process: Process) {
+            process.descendants().forEach { it.destroyForcibly() }
+            process.destroyForcibly()
+        }
+    }
+}
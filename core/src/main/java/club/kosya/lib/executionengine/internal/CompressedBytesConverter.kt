@@ -0,0 +1,13 @@
+package club.kosya.lib.executionengine.internal
+
+import javax.persistence.AttributeConverter
+import javax.persistence.Converter
+
+@Converter
+class CompressedBytesConverter(
+    private val codec: PayloadCodec,
+) : AttributeConverter<ByteArray, ByteArray> {
+    override fun convertToDatabaseColumn(attribute: ByteArray?): ByteArray? = attribute?.let { codec.encode(it) }
+
+    override fun convertToEntityAttribute(dbData: ByteArray?): ByteArray? = dbData?.let { codec.decode(it) }
+}
@@ -0,0 +1,13 @@
+package club.kosya.lib.executionengine.internal
+
+import javax.persistence.AttributeConverter
+import javax.persistence.Converter
+
+@Converter
+class CompressedTextConverter(
+    private val codec: PayloadCodec,
+) : AttributeConverter<String, ByteArray> {
+    override fun convertToDatabaseColumn(attribute: String?): ByteArray? = codec.encodeText(attribute)
+
+    override fun convertToEntityAttribute(dbData: ByteArray?): String? = codec.decodeText(dbData)
+}
@@ -0,0 +1,12 @@
+package club.kosya.lib.executionengine.internal
+
+interface CompressionCodec {
+    // Written into every payload header, so it must never change once data has been stored with it
+    val id: Int
+
+    val name: String
+
+    fun compress(data: ByteArray): ByteArray
+
+    fun decompress(data: ByteArray): ByteArray
+}
@@ -0,0 +1,27 @@
+package club.kosya.lib.executionengine.internal
+
+import org.springframework.stereotype.Component
+import java.io.ByteArrayOutputStream
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.InflaterInputStream
+
+@Component
+class DeflateCompressionCodec : CompressionCodec {
+    override val id = 1
+
+    override val name = "deflate"
+
+    override fun compress(data: ByteArray): ByteArray {
+        val out = ByteArrayOutputStream(data.size / 4)
+        val deflater = Deflater(Deflater.BEST_SPEED)
+        try {
+            DeflaterOutputStream(out, deflater).use { it.write(data) }
+        } finally {
+            deflater.end()
+        }
+        return out.toByteArray()
+    }
+
+    override fun decompress(data: ByteArray): ByteArray = InflaterInputStream(data.inputStream()).use { it.readAllBytes() }
+}
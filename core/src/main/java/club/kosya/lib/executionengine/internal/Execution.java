@@ -4,6 +4,7 @@ import club.kosya.lib.executionengine.ExecutionStatus;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
@@ -13,9 +14,11 @@ import javax.persistence.Id;
 import javax.persistence.Table;
 import javax.persistence.Version;
 import lombok.Data;
+import org.hibernate.annotations.DynamicUpdate;
 
 @Data
 @Entity
+@DynamicUpdate
 @Table(name = "executions")
 public class Execution {
     @Id
@@ -30,19 +33,32 @@ public class Execution {
     private LocalDateTime queuedAt;
 
     @Column(nullable = false)
+    private String workflowType;
+
+    @Column(nullable = false)
+    @Convert(converter = CompressedBytesConverter.class)
     private byte[] definition;
 
     @Column(nullable = false)
+    @Convert(converter = CompressedTextConverter.class)
     private String params;
 
+    @Convert(converter = CompressedTextConverter.class)
     private String state;
 
+    @Convert(converter = CompressedBytesConverter.class)
+    private byte[] stateData;
+
     private LocalDateTime startedAt;
 
     private LocalDateTime completedAt;
 
     private Instant wakeAt;
 
+    private String ownerNode;
+
+    private Instant leaseExpiresAt;
+
     @Version
     private Long version;
 }
@@ -0,0 +1,5 @@
+package club.kosya.lib.executionengine.internal
+
+data class ExecutionCancelledEvent(
+    val executionId: Long,
+)
@@ -0,0 +1,231 @@
+package club.kosya.lib.executionengine.internal
+
+import club.kosya.lib.executionengine.ExecutionStatus
+import club.kosya.lib.executionengine.WorkflowRunrProperties
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.TransactionDefinition
+import org.springframework.transaction.support.TransactionTemplate
+import java.time.Duration
+import java.time.Instant
+
+@Component
+class ExecutionClaimer(
+    private val executions: ExecutionsRepository,
+    private val rateLimiter: RateLimiter,
+    private val properties: WorkflowRunrProperties,
+    transactionManager: PlatformTransactionManager,
+) {
+    private val transactions =
+        TransactionTemplate(transactionManager).apply {
+            propagationBehavior = TransactionDefinition.PROPAGATION_REQUIRES_NEW
+        }
+    private val selector = WeightedFairSelector { properties.queues[it]?.weight?.coerceAtLeast(1) ?: 1 }
+
+    fun claimQueued(limit: Int): List<Long> {
+        if (limit <= 0) {
+            return emptyList()
+        }
+
+        val shares = selector.allocate(configuredTypes() + OTHER_TYPES, limit)
+
+        val claimed = ArrayList<Long>()
+        val saturated = ArrayList<String>()
+        shares.forEach { (workflowType, share) ->
+            val ids = claimQueuedOfType(workflowType, share)
+            claimed.addAll(ids)
+            if (ids.size == share) {
+                saturated.add(workflowType)
+            }
+        }
+
+        // Slots left over by types that ran out of work or hit their limit go to types that may have more
+        for (workflowType in saturated) {
+            val leftover = limit - claimed.size
+            if (leftover <= 0) {
+                break
+            }
+            claimed.addAll(claimQueuedOfType(workflowType, leftover))
+        }
+
+        return claimed
+    }
+
+    fun claimQueued(
+        workflowType: String,
+        ids: Collection<Long>,
+    ): List<Long> {
+        if (ids.isEmpty()) {
+            return emptyList()
+        }
+
+        return claimWithinLimit(workflowType, ids.size) { _, limit ->
+            withinRate(workflowType, executions.lockClaimableQueuedIdsIn(ids).take(limit))
+        }
+    }
+
+    // A resumed sleeper is active again, so it counts against its type's concurrency limit like a fresh start
+    fun claimDueSleepers(limit: Int): List<Long> {
+        if (limit <= 0) {
+            return emptyList()
+        }
+
+        val limited = limitedTypes()
+        val claimed = ArrayList<Long>()
+        for (workflowType in limited) {
+            val leftover = limit - claimed.size
+            if (leftover <= 0) {
+                return claimed
+            }
+            claimed.addAll(
+                claimWithinLimit(workflowType, leftover) { now, allowed ->
+                    executions.lockDueSleeperIdsOfType(workflowType, now, allowed)
+                },
+            )
+        }
+
+        val leftover = limit - claimed.size
+        if (leftover > 0) {
+            claimed.addAll(
+                claim { now ->
+                    if (limited.isEmpty()) {
+                        executions.lockDueSleeperIds(now, leftover)
+                    } else {
+                        executions.lockDueSleeperIdsOfOtherTypes(limited, now, leftover)
+                    }
+                },
+            )
+        }
+        return claimed
+    }
+
+    fun claimDueSleepers(ids: Collection<Long>): List<Long> {
+        if (ids.isEmpty()) {
+            return emptyList()
+        }
+
+        val limited = limitedTypes()
+        if (limited.isEmpty()) {
+            return claim { now -> executions.lockDueSleeperIdsIn(ids, now) }
+        }
+
+        val idsByType =
+            executions
+                .findWorkflowTypes(ids)
+                .groupBy({ if (it.workflowType in limited) it.workflowType else OTHER_TYPES }, { it.id })
+        return idsByType.flatMap { (workflowType, typeIds) ->
+            if (workflowType == OTHER_TYPES) {
+                claim { now -> executions.lockDueSleeperIdsIn(typeIds, now) }
+            } else {
+                claimWithinLimit(workflowType, typeIds.size) { now, allowed ->
+                    executions.lockDueSleeperIdsIn(typeIds, now).take(allowed)
+                }
+            }
+        }
+    }
+
+    fun renewLeases(ids: Collection<Long>): Int {
+        if (ids.isEmpty()) {
+            return 0
+        }
+
+        return transactions.execute {
+            executions.renewLeases(ids, properties.nodeId, Instant.now().plus(properties.claim.leaseDuration))
+        }!!
+    }
+
+    fun release(ids: Collection<Long>): Int {
+        if (ids.isEmpty()) {
+            return 0
+        }
+
+        return transactions.execute { executions.releaseOwned(ids, properties.nodeId) }!!
+    }
+
+    // Saving through the entity bumps the version, which fences out the node that held the expired lease
+    fun requeueExpiredLeases(limit: Int): List<Duration> =
+        transactions.execute {
+            val now = Instant.now()
+            val ids = executions.lockExpiredLeaseIds(now, limit).map { it.toLong() }
+            val expired = executions.findAllById(ids)
+
+            val overdue =
+                expired.map {
+                    val lag = it.leaseExpiresAt?.let { expiredAt -> Duration.between(expiredAt, now) } ?: Duration.ZERO
+                    log.warn("Re-queueing execution with expired lease: executionId={}, owner={}, overdue={}", it.id, it.ownerNode, lag)
+
+                    it.status = ExecutionStatus.Queued
+                    it.ownerNode = null
+                    it.leaseExpiresAt = null
+                    lag
+                }
+            executions.saveAll(expired)
+            overdue
+        }!!
+
+    // Types without queue or rate settings share one bucket, so a poll never has to scan the queue for its types
+    private fun claimQueuedOfType(
+        workflowType: String,
+        limit: Int,
+    ): List<Long> {
+        if (workflowType == OTHER_TYPES) {
+            val configured = configuredTypes()
+            return claim {
+                if (configured.isEmpty()) {
+                    executions.lockClaimableQueuedIdsOfAnyType(limit)
+                } else {
+                    executions.lockClaimableQueuedIdsOfOtherTypes(configured, limit)
+                }
+            }
+        }
+
+        return claimWithinLimit(workflowType, limit) { _, allowed ->
+            withinRate(workflowType, executions.lockClaimableQueuedIds(workflowType, allowed))
+        }
+    }
+
+    private fun withinRate(
+        workflowType: String,
+        ids: List<Number>,
+    ): List<Number> = ids.take(rateLimiter.takeForWorkflow(workflowType, ids.size))
+
+    // The queue row lock serializes claims of a limited type across nodes while its active count is checked
+    private fun claimWithinLimit(
+        workflowType: String,
+        limit: Int,
+        lock: (now: Instant, limit: Int) -> List<Number>,
+    ): List<Long> {
+        val maxConcurrency =
+            properties.queues[workflowType]?.maxConcurrency
+                ?: return claim { now -> lock(now, limit) }
+
+        return claim { now ->
+            executions.ensureQueue(workflowType)
+            executions.lockQueue(workflowType)
+
+            val allowed = minOf(limit, maxConcurrency - executions.countActive(workflowType).toInt())
+            if (allowed > 0) lock(now, allowed) else emptyList()
+        }
+    }
+
+    private fun configuredTypes(): Set<String> = properties.queues.keys + properties.rateLimits.workflows.keys
+
+    private fun limitedTypes(): Set<String> = properties.queues.filterValues { it.maxConcurrency != null }.keys
+
+    private fun claim(lock: (Instant) -> List<Number>): List<Long> =
+        transactions.execute {
+            val now = Instant.now()
+            val ids = lock(now).map { it.toLong() }
+            if (ids.isNotEmpty()) {
+                executions.markRunning(ids, properties.nodeId, now, now.plus(properties.claim.leaseDuration))
+            }
+            ids
+        }!!
+
+    companion object {
+        private val log = LoggerFactory.getLogger(ExecutionClaimer::class.java)
+
+        private const val OTHER_TYPES = "*"
+    }
+}
@@ -5,51 +5,82 @@ import club.kosya.lib.executionengine.ExecutionStatus;
 import club.kosya.lib.workflow.ExecutionContext;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Deque;
-import java.util.function.Consumer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
 @Slf4j
 public class ExecutionContextImpl implements ExecutionContext {
     private final ObjectMapper objectMapper;
-    private final ExecutionsRepository executions;
+    private final ExecutionUnitOfWork unitOfWork;
+    @Getter
     private final ExecutionFlow flow;
-    private final Deque<Integer> actionCounterStack;
+    private final ActionPath actionPath;
     private final ObjectDeserializer deserializerRegistry;
+    private final SleepListener sleepListener;
+    private final ExecutionControl control;
+    private final ActionThrottle actionThrottle;
+    private final BranchRunner branchRunner;
+    // Not the object monitor: a checkpoint blocks on the group commit, which would pin a virtual thread's carrier
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile boolean forking;
+    private String enclosingScope;
 
     public ExecutionContextImpl(
             String id,
             ObjectMapper objectMapper,
             ExecutionsRepository executions,
             ObjectDeserializer deserializerRegistry) {
+        this(
+                id,
+                id == null
+                        ? null
+                        : new StateColumnFlowStore(executions, objectMapper, FlowStateFormat.JSON)
+                                .open(Long.parseLong(id)),
+                objectMapper,
+                deserializerRegistry,
+                SleepListener.NONE,
+                new ExecutionControl(),
+                ActionThrottle.NONE,
+                BranchRunner.SEQUENTIAL);
+    }
+
+    public ExecutionContextImpl(
+            String id,
+            ExecutionUnitOfWork unitOfWork,
+            ObjectMapper objectMapper,
+            ObjectDeserializer deserializerRegistry,
+            SleepListener sleepListener,
+            ExecutionControl control,
+            ActionThrottle actionThrottle,
+            BranchRunner branchRunner) {
         this.objectMapper = objectMapper;
-        this.executions = executions;
+        this.unitOfWork = unitOfWork;
         this.deserializerRegistry = deserializerRegistry;
-        this.actionCounterStack = new ArrayDeque<>();
+        this.sleepListener = sleepListener;
+        this.control = control;
+        this.actionThrottle = actionThrottle;
+        this.branchRunner = branchRunner;
+        this.actionPath = new ActionPath();
 
         if (id == null) {
             flow = null;
         } else {
             flow = restoreOrCreateFlow(id);
-            actionCounterStack.push(0);
         }
     }
 
     private ExecutionFlow restoreOrCreateFlow(String id) {
         try {
-            var execution = executions.findById(Long.parseLong(id));
-            if (execution.isEmpty() || execution.get().getState() == null) {
-                return new ExecutionFlow(id);
-            }
-
-            return objectMapper.readValue(execution.get().getState(), ExecutionFlow.class);
+            var restored = unitOfWork == null ? null : unitOfWork.restoreFlow();
+            return restored != null ? restored : new ExecutionFlow(id);
         } catch (Exception e) {
             throw new RuntimeException("Failed to restore flow", e);
         }
@@ -77,131 +108,216 @@ public class ExecutionContextImpl implements ExecutionContext {
             tracking.setResult(Instant.now().toString());
             tracking.setWakeAt(null);
 
-            updateExecution(it -> it.setWakeAt(null));
+            write(() -> unitOfWork.scheduleWakeup(null));
 
-            persistFlowState();
+            checkpoint(tracking);
             return;
         }
 
         tracking.setWakeAt(resumeAt);
+        checkpoint(tracking);
+        suspendUntil(resumeAt, "Workflow suspended for sleep until " + resumeAt);
+    }
 
-        updateExecution(it -> it.setWakeAt(resumeAt));
+    private void suspendUntil(Instant resumeAt, String reason) {
+        write(() -> unitOfWork.scheduleWakeup(resumeAt));
 
-        persistFlowStateAndYield("Workflow suspended for sleep until " + resumeAt);
+        sleepListener.onSleepScheduled(Long.parseLong(flow.getId()), resumeAt);
+        throw new WorkflowSuspendedException(reason);
+    }
+
+    // Branch ids are nested under the fan-out's own id, so a replay finds the branches that finished and runs the rest
+    @Override
+    public <R> List<R> awaitAll(String name, List<Supplier<R>> lambdas) {
+        var fork = findOrCreateActionByName(name);
+        var results = new Object[lambdas.size()];
+        var pending = new ArrayList<Runnable>();
+
+        actionPath.enter();
+        try {
+            for (int i = 0; i < lambdas.size(); i++) {
+                var index = i;
+                var tracking = findOrCreateActionByName(name);
+                if (tracking.getCompleted()) {
+                    results[index] = replay(tracking);
+                } else {
+                    pending.add(() -> results[index] = execute(tracking, lambdas.get(index)));
+                }
+            }
+        } finally {
+            actionPath.exit();
+        }
+
+        if (!pending.isEmpty()) {
+            forking = true;
+            try {
+                branchRunner.runAll(pending);
+            } finally {
+                forking = false;
+            }
+        }
+
+        if (!fork.getCompleted()) {
+            fork.setCompleted(true);
+            checkpoint(fork);
+        }
+        return (List<R>) Arrays.asList(results);
+    }
+
+    // Actions of the body are nested under the scope's id; once the scope completes, a replay returns its result
+    // without visiting them
+    @Override
+    public <R> R scope(String name, Supplier<R> body) {
+        var tracking = findOrCreateActionByName(name);
+        if (tracking.getCompleted()) {
+            return (R) replay(tracking);
+        }
+
+        tracking.setScope(true);
+        var outerScope = enclosingScope;
+        enclosingScope = tracking.getId();
+        R result;
+        actionPath.enter();
+        try {
+            result = body.get();
+        } finally {
+            actionPath.exit();
+            enclosingScope = outerScope;
+        }
+
+        complete(tracking, result, serialize(result));
+        return result;
     }
 
     public <R> R action(String name, Supplier<R> lambda) {
         var tracking = findOrCreateActionByName(name);
         if (tracking.getCompleted()) {
-            try {
-                return (R) deserializerRegistry.deserialize(tracking.getResultType(), tracking.getResult());
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to deserialize cached result", e);
-            }
+            return (R) replay(tracking);
+        }
+
+        return execute(tracking, lambda);
+    }
+
+    private <R> R execute(ExecutedAction tracking, Supplier<R> lambda) {
+        var name = tracking.getName();
+        var throttledFor = actionThrottle.acquire(name);
+        if (!throttledFor.isZero()) {
+            var resumeAt = Instant.now().plus(throttledFor);
+            suspendUntil(resumeAt, "Action " + name + " is rate limited until " + resumeAt);
         }
 
         var action = new WorkflowAction(this, tracking.getId(), name);
-        var result = action.execute(lambda::get);
+        var cancellation = CancellationToken.current();
+        var result = cancellation == null
+                ? action.execute(lambda::get)
+                : cancellation.interruptibly(() -> action.execute(lambda::get));
+        complete(tracking, result, serialize(result));
 
+        return result;
+    }
+
+    private String serialize(Object result) {
         try {
-            tracking.setResult(objectMapper.writeValueAsString(result));
-            tracking.setResultType(result != null ? result.getClass().getName() : null);
-            tracking.setCompleted(true);
-            persistFlowState();
-        } catch (Exception e) {
+            return objectMapper.writeValueAsString(result);
+        } catch (JsonProcessingException e) {
             throw new RuntimeException("Failed to persist action result", e);
         }
-
-        return result;
     }
 
-    private void persistFlowState() {
-        updateExecution(it -> {
-            try {
-                it.setState(objectMapper.writeValueAsString(flow));
-            } catch (JsonProcessingException e) {
-                throw new RuntimeException(e);
-            }
-        });
+    private void complete(ExecutedAction tracking, Object result, String json) {
+        writeLock.lock();
+        try {
+            tracking.setResult(json);
+            tracking.setResultType(result != null ? result.getClass().getName() : null);
+            tracking.setCompleted(true);
+            checkpoint(tracking);
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    private void persistFlowStateAndYield(String message) {
-        persistFlowState();
-        throw new WorkflowSuspendedException(message);
+    // Results that restore left in the store are not remembered, so they stay out of the heap once replayed
+    private Object replay(ExecutedAction tracking) {
+        if (flow.isDecoded(tracking.getId())) {
+            return flow.decodedResult(tracking.getId());
+        }
+
+        Object value;
+        try {
+            value = deserializerRegistry.deserialize(tracking.getResultType(), unitOfWork.replayResult(tracking));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to deserialize cached result", e);
+        }
+
+        if (!tracking.getResultDeferred()) {
+            var result = tracking.getResult();
+            flow.rememberDecoded(tracking.getId(), value, result != null ? result.length() : 0);
+        }
+        return value;
     }
 
-    private ExecutedAction findOrCreateAction(String actionId) {
-        return flow.getActions().stream()
-                .filter(a -> a.getId().equals(actionId))
-                .findFirst()
-                .orElseGet(() -> {
-                    var newAction = new ExecutedAction(actionId);
-                    flow.getActions().add(newAction);
-                    return newAction;
-                });
+    private void checkpoint(ExecutedAction action) {
+        write(() -> unitOfWork.checkpoint(flow, action));
     }
 
     private ExecutedAction findOrCreateActionByName(String name) {
-        checkCancellation();
+        if (forking) {
+            throw new IllegalStateException("Branches of a fan-out cannot start actions of their own");
+        }
+        checkCancelled();
+        checkDraining();
 
         var actionId = generateActionId(name);
-        var tracking = findOrCreateAction(actionId);
+        var tracking = flow.findOrAdd(actionId);
         tracking.setName(name);
+        tracking.setEnclosingScope(enclosingScope);
 
         return tracking;
     }
 
-    private void updateExecution(Consumer<Execution> mutation) {
-        var execution = executions.findById(Long.parseLong(flow.getId())).get();
-        mutation.accept(execution);
-        executions.save(execution);
+    public void finish(ExecutionStatus status) {
+        write(() -> unitOfWork.finish(status));
     }
 
-    private String generateActionId(String name) {
-        if (flow == null) {
-            return "placeholder";
-        }
-
-        String id = buildActionIdFromPath();
-        incrementCurrentLevelCounter();
-
-        return id;
+    public void releaseToQueue() {
+        write(unitOfWork::releaseToQueue);
     }
 
-    private String buildActionIdFromPath() {
-        var pathFromRoot = new ArrayList<>(actionCounterStack);
-        Collections.reverse(pathFromRoot);
-
-        var id = new StringBuilder();
-        for (int level = 0; level < pathFromRoot.size(); level++) {
-            if (level > 0) {
-                id.append(".");
+    // Every write is fenced by the version this run last wrote, so a node whose lease was taken over cannot overwrite
+    // the new owner's state; a cancellation also bumps the version and is noticed on the next write.
+    // Branches of a fan-out write one at a time, as each write is fenced by the version the previous one produced
+    private void write(Runnable write) {
+        writeLock.lock();
+        try {
+            write.run();
+        } catch (StaleExecutionException e) {
+            if (e.getStatus() == ExecutionStatus.Cancelled) {
+                throw new WorkflowCanceledException("Workflow " + flow.getId() + " was cancelled");
             }
+            throw new LeaseLostException("Workflow " + flow.getId() + " is now owned by " + e.getOwnerNode());
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-            var counter = pathFromRoot.get(level);
-            var isCurrentLevel = level == pathFromRoot.size() - 1;
-
-            if (isCurrentLevel) {
-                id.append(counter);
-            } else {
-                id.append(counter - 1);
-            }
+    private String generateActionId(String name) {
+        if (flow == null) {
+            return "placeholder";
         }
 
-        return id.toString();
+        return actionPath.next();
     }
 
-    private void incrementCurrentLevelCounter() {
-        int current = actionCounterStack.pop();
-        actionCounterStack.push(current + 1);
+    private void checkCancelled() {
+        var cancellation = CancellationToken.current();
+        if (cancellation != null) {
+            cancellation.throwIfCancelled();
+        }
     }
 
-    private void checkCancellation() {
-        if (flow == null) return;
-
-        var execution = executions.findById(Long.parseLong(flow.getId())).orElse(null);
-        if (execution != null && execution.getStatus() == ExecutionStatus.Cancelled) {
-            throw new WorkflowCanceledException("Workflow " + flow.getId() + " was cancelled");
+    private void checkDraining() {
+        if (flow != null && control.isDraining()) {
+            throw new WorkflowDrainedException("Workflow " + flow.getId() + " yielded for node shutdown");
         }
     }
 }
@@ -0,0 +1,14 @@
+package club.kosya.lib.executionengine.internal
+
+import org.springframework.stereotype.Component
+
+@Component
+class ExecutionControl {
+    @Volatile
+    var isDraining = false
+        private set
+
+    fun startDraining() {
+        isDraining = true
+    }
+}
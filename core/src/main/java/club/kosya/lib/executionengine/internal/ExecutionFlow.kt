@@ -1,10 +1,54 @@
 package club.kosya.lib.executionengine.internal
 
+import com.fasterxml.jackson.annotation.JsonIgnore
+import com.fasterxml.jackson.annotation.JsonInclude
+
 data class ExecutionFlow(
     val id: String = "",
     val actions: MutableList<ExecutedAction> = mutableListOf(),
 ) {
+    // Actions are only ever appended, so the index catches up with entries added straight to the list on the next lookup
+    private val positions = HashMap<String, Int>()
+    private var indexed = 0
+
+    // Results replayed in this JVM, so a later warm resume hands out the same values without decoding them again
+    private val decoded = HashMap<String, Any?>()
+
+    @get:JsonIgnore
+    var decodedBytes = 0L
+        private set
+
+    // Added to an action's list index to give its journal position; restore can leave stored rows out of the list,
+    // so the journal store moves new actions past the highest position already stored
+    @get:JsonIgnore
+    var positionOffset = 0
+
     constructor(id: String) : this(id, mutableListOf())
+
+    fun find(actionId: String): ExecutedAction? = positionOf(actionId)?.let { actions[it] }
+
+    fun findOrAdd(actionId: String): ExecutedAction = find(actionId) ?: ExecutedAction(actionId).also { actions.add(it) }
+
+    fun isDecoded(actionId: String): Boolean = decoded.containsKey(actionId)
+
+    fun decodedResult(actionId: String): Any? = decoded[actionId]
+
+    fun rememberDecoded(
+        actionId: String,
+        value: Any?,
+        serializedLength: Int,
+    ) {
+        decoded[actionId] = value
+        decodedBytes += serializedLength
+    }
+
+    fun positionOf(actionId: String): Int? {
+        while (indexed < actions.size) {
+            positions.putIfAbsent(actions[indexed].id, indexed)
+            indexed++
+        }
+        return positions[actionId]
+    }
 }
 
 data class ExecutedAction(
@@ -14,7 +58,16 @@ data class ExecutedAction(
     var resultType: String? = null,
     var completed: Boolean = false,
     var wakeAt: java.time.Instant? = null,
-    val childActions: MutableList<ExecutedAction> = mutableListOf(),
+    @get:JsonInclude(JsonInclude.Include.NON_NULL)
+    var childActions: MutableList<ExecutedAction>? = null,
+    @get:JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    var scope: Boolean = false,
+    @get:JsonInclude(JsonInclude.Include.NON_NULL)
+    var enclosingScope: String? = null,
 ) {
-    constructor(id: String) : this(id, null, null, null, false, null, mutableListOf())
+    // Set when restore left the result in the store; it is loaded only if the action is replayed
+    @get:JsonIgnore
+    var resultDeferred = false
+
+    constructor(id: String) : this(id, null, null, null, false, null, null, false, null)
 }
@@ -0,0 +1,6 @@
+package club.kosya.lib.executionengine.internal
+
+data class ExecutionQueuedEvent(
+    val executionId: Long,
+    val workflowType: String,
+)
@@ -0,0 +1,32 @@
+package club.kosya.lib.executionengine.internal;
+
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import lombok.Data;
+
+@Data
+@Entity
+@Table(name = "execution_signals")
+public class ExecutionSignal {
+    @Id
+    private long executionId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Type type;
+
+    @Column(nullable = false)
+    private String ownerNode;
+
+    @Column(nullable = false)
+    private Instant signalledAt;
+
+    public enum Type {
+        Cancel
+    }
+}
@@ -0,0 +1,23 @@
+package club.kosya.lib.executionengine.internal
+
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.repository.query.Param
+import java.time.Instant
+
+interface ExecutionSignalsRepository : JpaRepository<ExecutionSignal, Long> {
+    fun findByOwnerNode(ownerNode: String): List<ExecutionSignal>
+
+    @Modifying
+    @Query(value = "DELETE FROM execution_signals WHERE execution_id IN (:ids)", nativeQuery = true)
+    fun deleteByExecutionIds(
+        @Param("ids") ids: Collection<Long>,
+    ): Int
+
+    @Modifying
+    @Query(value = "DELETE FROM execution_signals WHERE signalled_at < :before", nativeQuery = true)
+    fun deleteSignalledBefore(
+        @Param("before") before: Instant,
+    ): Int
+}
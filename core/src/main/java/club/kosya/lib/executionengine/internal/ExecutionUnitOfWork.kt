@@ -0,0 +1,26 @@
+package club.kosya.lib.executionengine.internal
+
+import club.kosya.lib.executionengine.ExecutionStatus
+import java.time.Instant
+
+// Holds the execution row loaded once for a run; every write is checked against the version it last wrote
+// and throws StaleExecutionException instead of reloading when the row was changed elsewhere
+interface ExecutionUnitOfWork {
+    val execution: Execution
+
+    fun restoreFlow(): ExecutionFlow?
+
+    // A store that restored only the action index loads a deferred result here, without keeping it in the flow
+    fun replayResult(action: ExecutedAction): String?
+
+    fun checkpoint(
+        flow: ExecutionFlow,
+        action: ExecutedAction,
+    )
+
+    fun scheduleWakeup(wakeAt: Instant?)
+
+    fun finish(status: ExecutionStatus)
+
+    fun releaseToQueue()
+}
@@ -0,0 +1,8 @@
+package club.kosya.lib.executionengine.internal
+
+import java.time.Instant
+
+interface ExecutionWakeup {
+    val id: Long
+    val wakeAt: Instant
+}
@@ -0,0 +1,6 @@
+package club.kosya.lib.executionengine.internal
+
+interface ExecutionWorkflowType {
+    val id: Long
+    val workflowType: String
+}
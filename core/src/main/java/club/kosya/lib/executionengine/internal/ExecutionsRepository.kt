@@ -1,7 +1,9 @@
 package club.kosya.lib.executionengine.internal
 
 import club.kosya.lib.executionengine.ExecutionStatus
+import org.springframework.data.domain.Pageable
 import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Modifying
 import org.springframework.data.jpa.repository.Query
 import org.springframework.data.repository.query.Param
 import java.time.Instant
@@ -9,6 +11,176 @@ import java.time.Instant
 interface ExecutionsRepository : JpaRepository<Execution, Long> {
     fun findByStatus(status: ExecutionStatus): List<Execution>
 
-    @Query("SELECT e FROM Execution e WHERE e.wakeAt <= :now AND e.status = 'Running'")
-    fun findRunnableByWakeAtLessThanEqual(@Param("now") now: Instant): List<Execution>
+    @Query(
+        "SELECT e.id AS id, e.wakeAt AS wakeAt FROM Execution e " +
+            "WHERE e.status = 'Running' AND (e.wakeAt > :from OR (e.wakeAt = :from AND e.id > :afterId)) " +
+            "AND e.wakeAt <= :until ORDER BY e.wakeAt, e.id",
+    )
+    fun findWakeupsBetween(
+        @Param("from") from: Instant,
+        @Param("afterId") afterId: Long,
+        @Param("until") until: Instant,
+        pageable: Pageable,
+    ): List<ExecutionWakeup>
+
+    @Query("SELECT e.id AS id, e.workflowType AS workflowType FROM Execution e WHERE e.id IN :ids")
+    fun findWorkflowTypes(
+        @Param("ids") ids: Collection<Long>,
+    ): List<ExecutionWorkflowType>
+
+    @Query(
+        value =
+            "SELECT id FROM executions WHERE status = 'Queued' AND workflow_type = :workflowType " +
+                "ORDER BY queued_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+        nativeQuery = true,
+    )
+    fun lockClaimableQueuedIds(
+        @Param("workflowType") workflowType: String,
+        @Param("limit") limit: Int,
+    ): List<Number>
+
+    @Query(
+        value = "SELECT id FROM executions WHERE status = 'Queued' ORDER BY queued_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+        nativeQuery = true,
+    )
+    fun lockClaimableQueuedIdsOfAnyType(
+        @Param("limit") limit: Int,
+    ): List<Number>
+
+    @Query(
+        value =
+            "SELECT id FROM executions WHERE status = 'Queued' AND workflow_type NOT IN (:excluded) " +
+                "ORDER BY queued_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+        nativeQuery = true,
+    )
+    fun lockClaimableQueuedIdsOfOtherTypes(
+        @Param("excluded") excluded: Collection<String>,
+        @Param("limit") limit: Int,
+    ): List<Number>
+
+    @Query(
+        value =
+            "SELECT id FROM executions WHERE id IN (:ids) AND status = 'Queued' FOR UPDATE SKIP LOCKED",
+        nativeQuery = true,
+    )
+    fun lockClaimableQueuedIdsIn(
+        @Param("ids") ids: Collection<Long>,
+    ): List<Number>
+
+    @Query(
+        value =
+            "SELECT id FROM executions " +
+                "WHERE status = 'Running' AND wake_at <= :now " +
+                "ORDER BY wake_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+        nativeQuery = true,
+    )
+    fun lockDueSleeperIds(
+        @Param("now") now: Instant,
+        @Param("limit") limit: Int,
+    ): List<Number>
+
+    @Query(
+        value =
+            "SELECT id FROM executions " +
+                "WHERE status = 'Running' AND wake_at <= :now AND workflow_type = :workflowType " +
+                "ORDER BY wake_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+        nativeQuery = true,
+    )
+    fun lockDueSleeperIdsOfType(
+        @Param("workflowType") workflowType: String,
+        @Param("now") now: Instant,
+        @Param("limit") limit: Int,
+    ): List<Number>
+
+    @Query(
+        value =
+            "SELECT id FROM executions " +
+                "WHERE status = 'Running' AND wake_at <= :now AND workflow_type NOT IN (:excluded) " +
+                "ORDER BY wake_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+        nativeQuery = true,
+    )
+    fun lockDueSleeperIdsOfOtherTypes(
+        @Param("excluded") excluded: Collection<String>,
+        @Param("now") now: Instant,
+        @Param("limit") limit: Int,
+    ): List<Number>
+
+    @Query(
+        value =
+            "SELECT id FROM executions " +
+                "WHERE id IN (:ids) AND status = 'Running' AND wake_at <= :now FOR UPDATE SKIP LOCKED",
+        nativeQuery = true,
+    )
+    fun lockDueSleeperIdsIn(
+        @Param("ids") ids: Collection<Long>,
+        @Param("now") now: Instant,
+    ): List<Number>
+
+    @Query(
+        value =
+            "SELECT count(*) FROM executions WHERE workflow_type = :workflowType AND status = 'Running' AND wake_at IS NULL",
+        nativeQuery = true,
+    )
+    fun countActive(
+        @Param("workflowType") workflowType: String,
+    ): Number
+
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO workflow_queues (name) VALUES (:name)", nativeQuery = true)
+    fun ensureQueue(
+        @Param("name") name: String,
+    ): Int
+
+    @Query(value = "SELECT name FROM workflow_queues WHERE name = :name FOR UPDATE", nativeQuery = true)
+    fun lockQueue(
+        @Param("name") name: String,
+    ): String?
+
+    @Query(
+        value =
+            "SELECT id FROM executions " +
+                "WHERE status = 'Running' AND wake_at IS NULL AND (lease_expires_at IS NULL OR lease_expires_at < :now) " +
+                "ORDER BY lease_expires_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+        nativeQuery = true,
+    )
+    fun lockExpiredLeaseIds(
+        @Param("now") now: Instant,
+        @Param("limit") limit: Int,
+    ): List<Number>
+
+    @Modifying
+    @Query(
+        value =
+            "UPDATE executions SET status = 'Running', started_at = COALESCE(started_at, :now), wake_at = NULL, " +
+                "owner_node = :ownerNode, lease_expires_at = :leaseExpiresAt, version = version + 1 WHERE id IN (:ids)",
+        nativeQuery = true,
+    )
+    fun markRunning(
+        @Param("ids") ids: Collection<Long>,
+        @Param("ownerNode") ownerNode: String,
+        @Param("now") now: Instant,
+        @Param("leaseExpiresAt") leaseExpiresAt: Instant,
+    ): Int
+
+    @Modifying
+    @Query(
+        "UPDATE Execution e SET e.leaseExpiresAt = :leaseExpiresAt WHERE e.id IN :ids AND e.ownerNode = :ownerNode",
+    )
+    fun renewLeases(
+        @Param("ids") ids: Collection<Long>,
+        @Param("ownerNode") ownerNode: String,
+        @Param("leaseExpiresAt") leaseExpiresAt: Instant,
+    ): Int
+
+    @Modifying
+    @Query(
+        value =
+            "UPDATE executions SET status = 'Queued', owner_node = NULL, lease_expires_at = NULL, version = version + 1 " +
+                "WHERE id IN (:ids) AND owner_node = :ownerNode AND wake_at IS NULL AND status = 'Running'",
+        nativeQuery = true,
+    )
+    fun releaseOwned(
+        @Param("ids") ids: Collection<Long>,
+        @Param("ownerNode") ownerNode: String,
+    ): Int
 }
@@ -0,0 +1,8 @@
+package club.kosya.lib.executionengine.internal
+
+enum class FlowStateFormat {
+    JSON,
+
+    // Results are length-prefixed strings instead of JSON escaped inside the flow's JSON
+    CBOR,
+}
@@ -0,0 +1,34 @@
+package club.kosya.lib.executionengine.internal
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper
+
+// Binary state goes to state_data and text state to state; either is read back, so a text row is only converted
+// when its flow is next written
+class FlowStateSerializer(
+    private val objectMapper: ObjectMapper,
+) {
+    private val cborMapper = CBORMapper().findAndRegisterModules()
+
+    fun write(
+        execution: Execution,
+        flow: ExecutionFlow,
+        format: FlowStateFormat,
+    ) {
+        when (format) {
+            FlowStateFormat.JSON -> {
+                execution.state = objectMapper.writeValueAsString(flow)
+                execution.stateData = null
+            }
+            FlowStateFormat.CBOR -> {
+                execution.stateData = cborMapper.writeValueAsBytes(flow)
+                execution.state = null
+            }
+        }
+    }
+
+    fun read(execution: Execution): ExecutionFlow? {
+        execution.stateData?.let { return cborMapper.readValue(it, ExecutionFlow::class.java) }
+        return execution.state?.let { objectMapper.readValue(it, ExecutionFlow::class.java) }
+    }
+}
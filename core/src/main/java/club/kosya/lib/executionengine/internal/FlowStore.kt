@@ -0,0 +1,5 @@
+package club.kosya.lib.executionengine.internal
+
+fun interface FlowStore {
+    fun open(executionId: Long): ExecutionUnitOfWork?
+}
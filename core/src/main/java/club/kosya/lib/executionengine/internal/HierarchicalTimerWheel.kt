@@ -0,0 +1,136 @@
+package club.kosya.lib.executionengine.internal
+
+class HierarchicalTimerWheel<K : Any>(
+    private val tickMillis: Long,
+    startMillis: Long,
+) {
+    private val slots = List(LEVELS) { List(WHEEL_SIZE) { ArrayList<Timer<K>>() } }
+    private val timers = HashMap<K, Timer<K>>()
+    private val due = ArrayList<Timer<K>>()
+    private var currentTick = startMillis / tickMillis
+
+    val size: Int
+        get() = timers.size
+
+    fun schedule(
+        key: K,
+        deadlineMillis: Long,
+    ) {
+        timers.remove(key)?.cancelled = true
+
+        val timer = Timer(key, Math.ceilDiv(deadlineMillis, tickMillis))
+        timers[key] = timer
+        place(timer)
+    }
+
+    fun cancel(key: K) {
+        timers.remove(key)?.cancelled = true
+    }
+
+    fun advanceTo(nowMillis: Long): List<K> {
+        val expired = ArrayList<K>()
+        fireDue(expired)
+
+        val targetTick = nowMillis / tickMillis
+        while (currentTick < targetTick) {
+            currentTick++
+
+            for (level in LEVELS - 1 downTo 1) {
+                if ((currentTick and levelMask(level)) == 0L) {
+                    cascade(level)
+                }
+            }
+
+            val slot = slots[0][slotIndex(currentTick, 0)]
+            if (slot.isNotEmpty()) {
+                val fired = ArrayList(slot)
+                slot.clear()
+                fired.forEach { fire(it, expired) }
+            }
+            fireDue(expired)
+        }
+
+        return expired
+    }
+
+    private fun fireDue(expired: MutableList<K>) {
+        if (due.isEmpty()) {
+            return
+        }
+
+        val pending = ArrayList(due)
+        due.clear()
+        pending.forEach { fire(it, expired) }
+    }
+
+    private fun cascade(level: Int) {
+        val slot = slots[level][slotIndex(currentTick, level)]
+        if (slot.isEmpty()) {
+            return
+        }
+
+        val pending = ArrayList(slot)
+        slot.clear()
+        pending.filterNot { it.cancelled }.forEach { place(it) }
+    }
+
+    private fun fire(
+        timer: Timer<K>,
+        expired: MutableList<K>,
+    ) {
+        if (timer.cancelled) {
+            return
+        }
+        if (timer.deadlineTick > currentTick) {
+            place(timer)
+            return
+        }
+
+        timers.remove(timer.key, timer)
+        expired.add(timer.key)
+    }
+
+    private fun place(timer: Timer<K>) {
+        val delta = timer.deadlineTick - currentTick
+        if (delta <= 0) {
+            due.add(timer)
+            return
+        }
+
+        var level = 0
+        while (level < LEVELS - 1 && delta >= levelSpan(level + 1)) {
+            level++
+        }
+
+        // Beyond the top level span the timer parks in the current top slot and gets re-placed after one full rotation
+        val index =
+            if (delta >= levelSpan(LEVELS)) {
+                slotIndex(currentTick, LEVELS - 1)
+            } else {
+                slotIndex(timer.deadlineTick, level)
+            }
+        slots[level][index].add(timer)
+    }
+
+    private class Timer<K>(
+        val key: K,
+        val deadlineTick: Long,
+    ) {
+        var cancelled = false
+    }
+
+    companion object {
+        private const val BITS = 6
+        private const val WHEEL_SIZE = 1 shl BITS
+        private const val LEVELS = 4
+
+        private fun levelSpan(level: Int): Long = 1L shl (BITS * level)
+
+        private fun levelMask(level: Int): Long = levelSpan(level) - 1
+
+        private fun slotIndex(
+            tick: Long,
+            level: Int,
+        ): Int = ((tick shr (BITS * level)) and (WHEEL_SIZE - 1).toLong()).toInt()
+    }
+}
@@ -0,0 +1,343 @@
+package club.kosya.lib.executionengine.internal
+
+import club.kosya.lib.executionengine.ExecutionStatus
+import club.kosya.lib.executionengine.WorkflowRunrProperties
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.slf4j.LoggerFactory
+import org.springframework.dao.TransientDataAccessException
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.stereotype.Component
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import java.sql.Timestamp
+import java.sql.Types
+import java.time.Instant
+import java.time.LocalDateTime
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import javax.annotation.PostConstruct
+import javax.annotation.PreDestroy
+
+// Each action writes only its own journal row; rows from all running executions share one transaction per flush
+@Component
+class JournalFlowStore(
+    private val executions: ExecutionsRepository,
+    private val jdbcTemplate: JdbcTemplate,
+    objectMapper: ObjectMapper,
+    private val blobs: BlobStore,
+    private val codec: PayloadCodec,
+    transactionManager: PlatformTransactionManager,
+    properties: WorkflowRunrProperties,
+) : FlowStore {
+    private val nodeId = properties.nodeId
+    private val settings = properties.checkpoints
+    private val inlineResultLimit = properties.restore.inlineResultLimit
+    private val stateFormat = properties.state.format
+    private val transactions = TransactionTemplate(transactionManager)
+    private val stateSerializer = FlowStateSerializer(objectMapper)
+    private val pending = LinkedBlockingQueue<Checkpoint>()
+    private val flusher =
+        Thread
+            .ofPlatform()
+            .name("workflow-checkpoints")
+            .daemon()
+            .unstarted(this::run)
+
+    @PostConstruct
+    fun start() {
+        flusher.start()
+    }
+
+    override fun open(executionId: Long): ExecutionUnitOfWork? = executions.findById(executionId).orElse(null)?.let { UnitOfWork(it) }
+
+    // A flow kept in memory since suspending is still current only if this node's claim is the sole write since then
+    fun reopen(
+        execution: Execution,
+        flow: ExecutionFlow,
+    ): ExecutionUnitOfWork? {
+        val claimed = (execution.version ?: 0) + 1
+        val current = jdbcTemplate.query(SELECT_OWNED_VERSION, { rs, _ -> rs.getLong("version") }, execution.id, nodeId)
+        if (current.singleOrNull() != claimed) {
+            return null
+        }
+
+        execution.version = claimed
+        execution.status = ExecutionStatus.Running
+        execution.ownerNode = nodeId
+        execution.wakeAt = null
+        return UnitOfWork(execution, flow)
+    }
+
+    private inner class UnitOfWork(
+        override val execution: Execution,
+        private val warmFlow: ExecutionFlow? = null,
+    ) : ExecutionUnitOfWork {
+        private val version: Long
+            get() = execution.version ?: 0
+
+        // Executions started before the journal existed carry the start of their flow in the state columns;
+        // journaled actions replace or extend it
+        override fun restoreFlow(): ExecutionFlow? {
+            if (warmFlow != null) {
+                return warmFlow
+            }
+
+            val actions =
+                jdbcTemplate.query(SELECT_ACTION_INDEX, { rs, _ ->
+                    ExecutedAction(
+                        rs.getString("action_id"),
+                        rs.getString("name"),
+                        codec.decodeText(rs.getBytes("inline_result")),
+                        rs.getString("result_type"),
+                        rs.getBoolean("completed"),
+                        rs.getTimestamp("wake_at")?.toInstant(),
+                        scope = rs.getBoolean("scope"),
+                        enclosingScope = rs.getString("enclosing_scope"),
+                    ).apply { resultDeferred = rs.getBoolean("deferred") }
+                }, inlineResultLimit, inlineResultLimit, execution.id)
+
+            val snapshot = stateSerializer.read(execution)
+            snapshot?.let { convertSnapshot(it) }
+            if (actions.isEmpty()) {
+                return snapshot
+            }
+
+            val flow = snapshot ?: ExecutionFlow(execution.id.toString())
+            actions.forEach { action ->
+                val position = flow.positionOf(action.id)
+                if (position == null) flow.actions.add(action) else flow.actions[position] = action
+            }
+            val nextPosition = jdbcTemplate.queryForObject(SELECT_NEXT_POSITION, Int::class.java, execution.id) ?: 0
+            flow.positionOffset = maxOf(0, nextPosition - flow.actions.size)
+            return flow
+        }
+
+        // A snapshot in the other format is rewritten once; if the row has moved on, the next write is rejected anyway
+        private fun convertSnapshot(snapshot: ExecutionFlow) {
+            val stored = if (execution.stateData != null) FlowStateFormat.CBOR else FlowStateFormat.JSON
+            if (stored == stateFormat) {
+                return
+            }
+
+            stateSerializer.write(execution, snapshot, stateFormat)
+            val state = codec.encodeText(execution.state)
+            val stateData = execution.stateData?.let { codec.encode(it) }
+            if (jdbcTemplate.update(UPDATE_STATE, state, stateData, execution.id, version) > 0) {
+                execution.version = version + 1
+            }
+        }
+
+        override fun replayResult(action: ExecutedAction): String? {
+            if (!action.resultDeferred) {
+                return action.result
+            }
+
+            return jdbcTemplate
+                .query(SELECT_RESULT, { rs, _ ->
+                    rs.getString("result_ref")?.let { blobs.read(it) } ?: codec.decodeText(rs.getBytes("result"))
+                }, execution.id, action.id)
+                .single()
+        }
+
+        override fun checkpoint(
+            flow: ExecutionFlow,
+            action: ExecutedAction,
+        ) {
+            check(flusher.isAlive) { "Checkpoint writer is not running" }
+
+            // The ref is linked with the journal row, so a rejected checkpoint leaves its blob to the collector
+            val resultRef = action.result?.takeIf { blobs.shouldOffload(it) }?.let { blobs.write(it) }
+            val position = flow.positionOf(action.id)!! + flow.positionOffset
+            val checkpoint = Checkpoint(execution.id, version, position, action.copy(), resultRef)
+            pending.put(checkpoint)
+
+            val accepted =
+                try {
+                    checkpoint.accepted.join()
+                } catch (e: CompletionException) {
+                    throw e.cause ?: e
+                }
+            applied(accepted)
+
+            // Once journaled, a large result is left in the store as a restore would, so a long run keeps only the index
+            if ((action.result?.length ?: 0) > inlineResultLimit) {
+                action.result = null
+                action.resultDeferred = true
+            }
+        }
+
+        override fun scheduleWakeup(wakeAt: Instant?) {
+            applied(jdbcTemplate.update(UPDATE_WAKE_AT, wakeAt?.let { Timestamp.from(it) }, execution.id, version) > 0)
+            execution.wakeAt = wakeAt
+        }
+
+        override fun finish(status: ExecutionStatus) {
+            val completedAt = LocalDateTime.now()
+            applied(jdbcTemplate.update(UPDATE_OUTCOME, status.name, Timestamp.valueOf(completedAt), execution.id, version) > 0)
+            execution.status = status
+            execution.completedAt = completedAt
+        }
+
+        override fun releaseToQueue() {
+            applied(jdbcTemplate.update(RELEASE_TO_QUEUE, execution.id, version) > 0)
+            execution.status = ExecutionStatus.Queued
+            execution.ownerNode = null
+            execution.leaseExpiresAt = null
+        }
+
+        private fun applied(accepted: Boolean) {
+            if (!accepted) {
+                val current = executions.findById(execution.id).get()
+                throw StaleExecutionException(execution.id, current.status, current.ownerNode)
+            }
+            execution.version = version + 1
+        }
+    }
+
+    private fun run() {
+        try {
+            while (true) {
+                flush(nextBatch())
+            }
+        } catch (e: InterruptedException) {
+            val stopped = IllegalStateException("Checkpoint writer stopped")
+            generateSequence { pending.poll() }.forEach { it.accepted.completeExceptionally(stopped) }
+        }
+    }
+
+    private fun nextBatch(): List<Checkpoint> {
+        val batch = arrayListOf(pending.take())
+        val deadline = System.nanoTime() + settings.linger.toNanos()
+
+        while (batch.size < settings.maxBatch) {
+            val next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) ?: break
+            batch.add(next)
+        }
+        return batch
+    }
+
+    // The version bump fences each row first; only executions still owned by this writer get their action recorded.
+    // Rows are locked in id order, as the lease keeper's IN (...) update does, so the two cannot deadlock
+    private fun flush(batch: List<Checkpoint>) {
+        val ordered = batch.sortedBy { it.executionId }
+        val accepted =
+            try {
+                write(ordered)
+            } catch (e: Exception) {
+                log.error("Failed to flush checkpoints: batchSize={}", batch.size, e)
+                batch.forEach { it.accepted.completeExceptionally(e) }
+                return
+            }
+
+        batch.forEach { it.accepted.complete(it in accepted) }
+    }
+
+    // A lock timeout or deadlock is retried, so it does not fail every unrelated execution in the batch
+    private fun write(batch: List<Checkpoint>): Set<Checkpoint> {
+        var attempt = 1
+        while (true) {
+            try {
+                return transactions.execute { writeOnce(batch) }!!
+            } catch (e: TransientDataAccessException) {
+                if (attempt >= settings.flushAttempts) {
+                    throw e
+                }
+                log.warn("Retrying checkpoint flush: batchSize={}, attempt={}, reason={}", batch.size, attempt, e.message)
+                attempt++
+            }
+        }
+    }
+
+    private fun writeOnce(batch: List<Checkpoint>): Set<Checkpoint> {
+        val counts =
+            jdbcTemplate
+                .batchUpdate(BUMP_VERSION, batch, batch.size) { ps, checkpoint ->
+                    ps.setLong(1, checkpoint.executionId)
+                    ps.setLong(2, checkpoint.version)
+                }.flatMap { it.asIterable() }
+
+        val accepted = batch.filterIndexedTo(HashSet()) { i, _ -> counts[i] != 0 }
+        if (accepted.isNotEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_ACTION, accepted, accepted.size) { ps, checkpoint ->
+                val action = checkpoint.action
+                ps.setLong(1, checkpoint.executionId)
+                ps.setString(2, action.id)
+                ps.setInt(3, checkpoint.position)
+                ps.setString(4, action.name)
+                ps.setString(5, action.resultType)
+                ps.setBytes(6, if (checkpoint.resultRef == null) codec.encodeText(action.result) else null)
+                ps.setString(7, checkpoint.resultRef)
+                ps.setBoolean(8, action.completed)
+                ps.setBoolean(9, action.scope)
+                ps.setString(10, action.enclosingScope)
+                ps.setObject(11, action.wakeAt?.let { Timestamp.from(it) }, Types.TIMESTAMP)
+                ps.setTimestamp(12, Timestamp.from(Instant.now()))
+            }
+            accepted.forEach { checkpoint ->
+                checkpoint.resultRef?.let { blobs.link(checkpoint.executionId, listOf(it)) }
+            }
+        }
+        return accepted
+    }
+
+    @PreDestroy
+    fun stop() {
+        flusher.interrupt()
+    }
+
+    private class Checkpoint(
+        val executionId: Long,
+        val version: Long,
+        val position: Int,
+        val action: ExecutedAction,
+        val resultRef: String?,
+    ) {
+        val accepted = CompletableFuture<Boolean>()
+    }
+
+    companion object {
+        private val log = LoggerFactory.getLogger(JournalFlowStore::class.java)
+
+        private const val BUMP_VERSION = "UPDATE executions SET version = version + 1 WHERE id = ? AND version = ?"
+
+        private const val UPSERT_ACTION =
+            "INSERT INTO execution_actions " +
+                "(execution_id, action_id, position, name, result_type, result, result_ref, completed, scope, enclosing_scope, " +
+                "wake_at, recorded_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                "name = VALUES(name), result_type = VALUES(result_type), result = VALUES(result), result_ref = VALUES(result_ref), " +
+                "completed = VALUES(completed), scope = VALUES(scope), enclosing_scope = VALUES(enclosing_scope), " +
+                "wake_at = VALUES(wake_at), recorded_at = VALUES(recorded_at)"
+
+        private const val UPDATE_STATE =
+            "UPDATE executions SET state = ?, state_data = ?, version = version + 1 WHERE id = ? AND version = ?"
+
+        private const val UPDATE_WAKE_AT = "UPDATE executions SET wake_at = ?, version = version + 1 WHERE id = ? AND version = ?"
+
+        private const val UPDATE_OUTCOME =
+            "UPDATE executions SET status = ?, completed_at = ?, version = version + 1 WHERE id = ? AND version = ?"
+
+        private const val RELEASE_TO_QUEUE =
+            "UPDATE executions SET status = 'Queued', owner_node = NULL, lease_expires_at = NULL, version = version + 1 " +
+                "WHERE id = ? AND version = ?"
+
+        // Actions of a completed scope are never replayed, so they are not restored; each row is joined to its
+        // enclosing scope by primary key
+        private const val SELECT_ACTION_INDEX =
+            "SELECT a.action_id, a.name, a.result_type, a.completed, a.scope, a.enclosing_scope, a.wake_at, " +
+                "IF(LENGTH(a.result) <= ?, a.result, NULL) AS inline_result, " +
+                "a.result_ref IS NOT NULL OR LENGTH(a.result) > ? AS deferred " +
+                "FROM execution_actions a LEFT JOIN execution_actions s " +
+                "ON s.execution_id = a.execution_id AND s.action_id = a.enclosing_scope " +
+                "WHERE a.execution_id = ? AND NOT COALESCE(s.completed, FALSE) ORDER BY a.position"
+
+        private const val SELECT_NEXT_POSITION =
+            "SELECT COALESCE(MAX(position) + 1, 0) FROM execution_actions WHERE execution_id = ?"
+
+        private const val SELECT_OWNED_VERSION =
+            "SELECT version FROM executions WHERE id = ? AND owner_node = ? AND status = 'Running'"
+
+        private const val SELECT_RESULT = "SELECT result, result_ref FROM execution_actions WHERE execution_id = ? AND action_id = ?"
+    }
+}
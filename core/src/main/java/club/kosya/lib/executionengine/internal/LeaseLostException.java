@@ -0,0 +1,7 @@
+package club.kosya.lib.executionengine.internal;
+
+public class LeaseLostException extends RuntimeException {
+    public LeaseLostException(String reason) {
+        super(reason);
+    }
+}
@@ -0,0 +1,71 @@
+package club.kosya.lib.executionengine.internal
+
+import club.kosya.lib.executionengine.WorkflowRunrProperties
+import org.springframework.stereotype.Component
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.Semaphore
+import javax.annotation.PreDestroy
+
+// Slots are counted per fan-out, so one wide fan-out runs at most `parallelism` branches and cannot occupy the whole
+// shared pool; platform threads are capped at the dispatcher's worker count
+@Component
+class ParallelBranchRunner(
+    properties: WorkflowRunrProperties,
+) : BranchRunner {
+    private val parallelism = properties.branches.parallelism.coerceAtLeast(1)
+    private val executor: ExecutorService =
+        if (properties.dispatcher.virtualThreads) {
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("workflow-branch-vthread-", 0).factory())
+        } else {
+            Executors.newFixedThreadPool(
+                maxOf(properties.dispatcher.maxConcurrency, parallelism),
+                Thread.ofPlatform().name("workflow-branch-", 0).factory(),
+            )
+        }
+
+    override fun runAll(branches: List<Runnable>) {
+        val slots = Semaphore(parallelism)
+        val cancellation = CancellationToken.current()
+        val futures = ArrayList<Future<*>>(branches.size)
+
+        try {
+            branches.forEach { branch ->
+                slots.acquire()
+                futures.add(
+                    executor.submit(
+                        Runnable {
+                            try {
+                                CancellationToken.runAs(cancellation, branch)
+                            } finally {
+                                slots.release()
+                            }
+                        },
+                    ),
+                )
+            }
+
+            var failure: Throwable? = null
+            futures.forEach {
+                try {
+                    it.get()
+                } catch (e: ExecutionException) {
+                    failure = failure ?: e.cause
+                }
+            }
+            failure?.let { throw it }
+        } catch (e: InterruptedException) {
+            futures.forEach { it.cancel(true) }
+            cancellation?.throwIfCancelled()
+            Thread.currentThread().interrupt()
+            throw IllegalStateException("Interrupted while waiting for branches", e)
+        }
+    }
+
+    @PreDestroy
+    fun stop() {
+        executor.shutdownNow()
+    }
+}
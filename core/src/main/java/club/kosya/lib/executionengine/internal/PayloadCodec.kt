@@ -0,0 +1,68 @@
+package club.kosya.lib.executionengine.internal
+
+import club.kosya.lib.executionengine.WorkflowRunrProperties
+import org.springframework.stereotype.Component
+
+// A compressed payload starts with MAGIC and the codec id. Anything else, including rows written before compression
+// existed, is raw UTF-8; JSON never starts with MAGIC, and a raw payload that does is stored behind a RAW header
+@Component
+class PayloadCodec(
+    codecs: List<CompressionCodec>,
+    properties: WorkflowRunrProperties,
+) {
+    private val settings = properties.compression
+    private val codecsById = codecs.associateBy { it.id }
+    private val writer =
+        codecs.find { it.name == settings.codec }
+            ?: throw IllegalStateException("Unknown compression codec: ${settings.codec}")
+
+    init {
+        require(codecsById.size == codecs.size && RAW !in codecsById) { "Compression codec ids must be unique and non-zero" }
+    }
+
+    fun encode(data: ByteArray): ByteArray {
+        if (data.size >= settings.threshold) {
+            val compressed = writer.compress(data)
+            if (compressed.size + HEADER_SIZE < data.size) {
+                return withHeader(writer.id, compressed)
+            }
+        }
+        return if (data.firstOrNull() == MAGIC) withHeader(RAW, data) else data
+    }
+
+    fun decode(stored: ByteArray): ByteArray {
+        if (stored.size < HEADER_SIZE || stored[0] != MAGIC) {
+            return stored
+        }
+
+        val id = stored[1].toInt()
+        val payload = stored.copyOfRange(HEADER_SIZE, stored.size)
+        if (id == RAW) {
+            return payload
+        }
+
+        val codec = codecsById[id] ?: throw IllegalStateException("Unknown compression codec id: $id")
+        return codec.decompress(payload)
+    }
+
+    fun encodeText(text: String?): ByteArray? = text?.let { encode(it.toByteArray()) }
+
+    fun decodeText(stored: ByteArray?): String? = stored?.let { String(decode(it)) }
+
+    private fun withHeader(
+        id: Int,
+        payload: ByteArray,
+    ): ByteArray {
+        val stored = ByteArray(HEADER_SIZE + payload.size)
+        stored[0] = MAGIC
+        stored[1] = id.toByte()
+        payload.copyInto(stored, HEADER_SIZE)
+        return stored
+    }
+
+    companion object {
+        private const val MAGIC: Byte = 0x1F
+        private const val RAW = 0
+        private const val HEADER_SIZE = 2
+    }
+}
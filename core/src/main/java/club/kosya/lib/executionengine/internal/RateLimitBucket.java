@@ -0,0 +1,22 @@
+package club.kosya.lib.executionengine.internal;
+
+import java.time.Instant;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import lombok.Data;
+
+@Data
+@Entity
+@Table(name = "rate_limit_buckets")
+public class RateLimitBucket {
+    @Id
+    private String name;
+
+    @Column(nullable = false)
+    private double tokens;
+
+    @Column(nullable = false)
+    private Instant refilledAt;
+}
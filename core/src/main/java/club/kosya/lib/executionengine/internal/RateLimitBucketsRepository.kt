@@ -0,0 +1,28 @@
+package club.kosya.lib.executionengine.internal
+
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Lock
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.repository.query.Param
+import java.time.Instant
+import javax.persistence.LockModeType
+
+interface RateLimitBucketsRepository : JpaRepository<RateLimitBucket, String> {
+    @Modifying
+    @Query(
+        value = "INSERT IGNORE INTO rate_limit_buckets (name, tokens, refilled_at) VALUES (:name, :tokens, :now)",
+        nativeQuery = true,
+    )
+    fun ensureBucket(
+        @Param("name") name: String,
+        @Param("tokens") tokens: Double,
+        @Param("now") now: Instant,
+    ): Int
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM RateLimitBucket b WHERE b.name = :name")
+    fun lockByName(
+        @Param("name") name: String,
+    ): RateLimitBucket
+}
@@ -0,0 +1,64 @@
+package club.kosya.lib.executionengine.internal
+
+import club.kosya.lib.executionengine.WorkflowRunrProperties
+import org.springframework.stereotype.Component
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import java.time.Duration
+import java.time.Instant
+import kotlin.math.floor
+
+// Buckets live in the database so every node draws from the same budget; the bucket row lock serializes takers
+@Component
+class RateLimiter(
+    private val buckets: RateLimitBucketsRepository,
+    private val properties: WorkflowRunrProperties,
+    transactionManager: PlatformTransactionManager,
+) : ActionThrottle {
+    private val transactions = TransactionTemplate(transactionManager)
+
+    fun takeForWorkflow(
+        workflowType: String,
+        wanted: Int,
+    ): Int {
+        val limit = properties.rateLimits.workflows[workflowType] ?: return wanted
+        if (wanted <= 0) {
+            return 0
+        }
+
+        return take("workflow:$workflowType", TokenBucket(limit), wanted).granted
+    }
+
+    override fun acquire(actionName: String): Duration {
+        val limit = properties.rateLimits.actions[actionName] ?: return Duration.ZERO
+
+        val bucket = TokenBucket(limit)
+        val grant = take("action:$actionName", bucket, 1)
+        return if (grant.granted == 1) Duration.ZERO else bucket.timeUntilToken(grant.tokensLeft)
+    }
+
+    private fun take(
+        name: String,
+        bucket: TokenBucket,
+        wanted: Int,
+    ): Grant =
+        transactions.execute {
+            val now = Instant.now()
+            buckets.ensureBucket(name, bucket.capacity, now)
+
+            val row = buckets.lockByName(name)
+            val available = bucket.refill(row.tokens, row.refilledAt, now)
+            val granted = minOf(wanted, floor(available).toInt())
+
+            row.tokens = available - granted
+            row.refilledAt = now
+            buckets.save(row)
+
+            Grant(granted, row.tokens)
+        }!!
+
+    private data class Grant(
+        val granted: Int,
+        val tokensLeft: Double,
+    )
+}
@@ -0,0 +1,15 @@
+package club.kosya.lib.executionengine.internal
+
+import java.time.Instant
+
+fun interface SleepListener {
+    fun onSleepScheduled(
+        executionId: Long,
+        wakeAt: Instant,
+    )
+
+    companion object {
+        @JvmField
+        val NONE = SleepListener { _, _ -> }
+    }
+}
@@ -0,0 +1,16 @@
+package club.kosya.lib.executionengine.internal;
+
+import club.kosya.lib.executionengine.ExecutionStatus;
+import lombok.Getter;
+
+@Getter
+public class StaleExecutionException extends RuntimeException {
+    private final ExecutionStatus status;
+    private final String ownerNode;
+
+    public StaleExecutionException(long executionId, ExecutionStatus status, String ownerNode) {
+        super("Execution " + executionId + " was changed elsewhere: status=" + status + ", owner=" + ownerNode);
+        this.status = status;
+        this.ownerNode = ownerNode;
+    }
+}
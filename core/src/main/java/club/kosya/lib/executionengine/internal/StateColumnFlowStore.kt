@@ -0,0 +1,56 @@
+package club.kosya.lib.executionengine.internal
+
+import club.kosya.lib.executionengine.ExecutionStatus
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.springframework.dao.OptimisticLockingFailureException
+import java.time.Instant
+import java.time.LocalDateTime
+
+class StateColumnFlowStore(
+    private val executions: ExecutionsRepository,
+    objectMapper: ObjectMapper,
+    private val format: FlowStateFormat = FlowStateFormat.JSON,
+) : FlowStore {
+    private val serializer = FlowStateSerializer(objectMapper)
+
+    override fun open(executionId: Long): ExecutionUnitOfWork? = executions.findById(executionId).orElse(null)?.let { UnitOfWork(it) }
+
+    private inner class UnitOfWork(
+        override var execution: Execution,
+    ) : ExecutionUnitOfWork {
+        override fun restoreFlow(): ExecutionFlow? = serializer.read(execution)
+
+        override fun replayResult(action: ExecutedAction): String? = action.result
+
+        override fun checkpoint(
+            flow: ExecutionFlow,
+            action: ExecutedAction,
+        ) = write { serializer.write(it, flow, format) }
+
+        override fun scheduleWakeup(wakeAt: Instant?) = write { it.wakeAt = wakeAt }
+
+        override fun finish(status: ExecutionStatus) =
+            write {
+                it.status = status
+                it.completedAt = LocalDateTime.now()
+            }
+
+        override fun releaseToQueue() =
+            write {
+                it.status = ExecutionStatus.Queued
+                it.ownerNode = null
+                it.leaseExpiresAt = null
+            }
+
+        private fun write(mutation: (Execution) -> Unit) {
+            mutation(execution)
+            execution =
+                try {
+                    executions.save(execution)
+                } catch (e: OptimisticLockingFailureException) {
+                    val current = executions.findById(execution.id).get()
+                    throw StaleExecutionException(execution.id, current.status, current.ownerNode)
+                }
+        }
+    }
+}
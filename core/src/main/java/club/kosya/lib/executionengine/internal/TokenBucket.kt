@@ -0,0 +1,32 @@
+package club.kosya.lib.executionengine.internal
+
+import club.kosya.lib.executionengine.WorkflowRunrProperties
+import java.time.Duration
+import java.time.Instant
+import kotlin.math.ceil
+
+class TokenBucket(
+    val capacity: Double,
+    private val refillPerMillis: Double,
+) {
+    constructor(limit: WorkflowRunrProperties.RateLimit) : this(
+        (limit.burst ?: limit.permits).toDouble(),
+        limit.permits.toDouble() / limit.period.toMillis(),
+    )
+
+    fun refill(
+        tokens: Double,
+        refilledAt: Instant,
+        now: Instant,
+    ): Double {
+        val elapsedMillis = Duration.between(refilledAt, now).toMillis().coerceAtLeast(0)
+        return minOf(capacity, tokens + elapsedMillis * refillPerMillis)
+    }
+
+    fun timeUntilToken(tokens: Double): Duration =
+        if (tokens >= 1) {
+            Duration.ZERO
+        } else {
+            Duration.ofMillis(ceil((1 - tokens) / refillPerMillis).toLong())
+        }
+}
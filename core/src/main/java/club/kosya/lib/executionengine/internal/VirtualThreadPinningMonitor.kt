@@ -0,0 +1,45 @@
+package club.kosya.lib.executionengine.internal
+
+import jdk.jfr.consumer.RecordedEvent
+import jdk.jfr.consumer.RecordingStream
+import org.slf4j.LoggerFactory
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicLong
+
+class VirtualThreadPinningMonitor(
+    threshold: Duration,
+) : AutoCloseable {
+    private val pinnedEvents = AtomicLong()
+    private val stream = RecordingStream()
+
+    init {
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace()
+        stream.onEvent(PINNED_EVENT, ::onPinned)
+        stream.startAsync()
+    }
+
+    private fun onPinned(event: RecordedEvent) {
+        val frame =
+            event.stackTrace
+                ?.frames
+                ?.firstOrNull { it.isJavaFrame }
+                ?.let { "${it.method.type.name}.${it.method.name}:${it.lineNumber}" }
+
+        log.warn(
+            "Virtual thread pinned: thread={}, duration={}ms, at={}, total={}",
+            event.thread?.javaName,
+            event.duration.toMillis(),
+            frame,
+            pinnedEvents.incrementAndGet(),
+        )
+    }
+
+    override fun close() {
+        stream.close()
+    }
+
+    companion object {
+        private const val PINNED_EVENT = "jdk.VirtualThreadPinned"
+        private val log = LoggerFactory.getLogger(VirtualThreadPinningMonitor::class.java)
+    }
+}
@@ -0,0 +1,8 @@
+package club.kosya.lib.executionengine.internal
+
+import java.time.Instant
+
+data class WakeupScheduledEvent(
+    val executionId: Long,
+    val wakeAt: Instant,
+)
@@ -0,0 +1,45 @@
+package club.kosya.lib.executionengine.internal
+
+import club.kosya.lib.executionengine.WorkflowRunrProperties
+import club.kosya.lib.workflow.internal.PreparedWorkflow
+import org.springframework.stereotype.Component
+
+class WarmContext(
+    val execution: Execution,
+    val workflow: PreparedWorkflow,
+    val flow: ExecutionFlow,
+) {
+    val weight: Long =
+        (execution.definition?.size ?: 0) + flow.actions.sumOf { (it.result?.length ?: 0).toLong() } + flow.decodedBytes
+}
+
+// Contexts of workflows this node suspended, so a resume on the same node skips parsing and decoding them again
+@Component
+class WarmContextCache(
+    properties: WorkflowRunrProperties,
+) {
+    private val settings = properties.warmCache
+    private val entries = LinkedHashMap<Long, WarmContext>(16, 0.75f, true)
+    private var weight = 0L
+
+    @Synchronized
+    fun put(context: WarmContext) {
+        val executionId = context.execution.id
+        entries.remove(executionId)?.let { weight -= it.weight }
+        if (settings.maxEntries <= 0 || context.weight > settings.maxWeight) {
+            return
+        }
+
+        entries[executionId] = context
+        weight += context.weight
+
+        val iterator = entries.values.iterator()
+        while (entries.size > settings.maxEntries || weight > settings.maxWeight) {
+            weight -= iterator.next().weight
+            iterator.remove()
+        }
+    }
+
+    @Synchronized
+    fun take(executionId: Long): WarmContext? = entries.remove(executionId)?.also { weight -= it.weight }
+}
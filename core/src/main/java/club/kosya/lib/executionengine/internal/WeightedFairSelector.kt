@@ -0,0 +1,37 @@
+package club.kosya.lib.executionengine.internal
+
+class WeightedFairSelector(
+    private val weightOf: (String) -> Int,
+) {
+    private val credits = HashMap<String, Long>()
+
+    // Smooth weighted round-robin; credits carry over between calls so small batches stay fair over time
+    @Synchronized
+    fun allocate(
+        queues: Collection<String>,
+        slots: Int,
+    ): Map<String, Int> {
+        val shares = LinkedHashMap<String, Int>()
+        if (queues.isEmpty()) {
+            return shares
+        }
+
+        credits.keys.retainAll(queues.toSet())
+        val totalWeight = queues.sumOf { weightOf(it).toLong() }
+
+        repeat(slots) {
+            var selected = queues.first()
+            for (queue in queues) {
+                val credit = credits.getOrDefault(queue, 0L) + weightOf(queue)
+                credits[queue] = credit
+                if (credit > credits.getValue(selected)) {
+                    selected = queue
+                }
+            }
+            credits[selected] = credits.getValue(selected) - totalWeight
+            shares.merge(selected, 1, Int::plus)
+        }
+
+        return shares
+    }
+}
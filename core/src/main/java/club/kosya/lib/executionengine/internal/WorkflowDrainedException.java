@@ -0,0 +1,7 @@
+package club.kosya.lib.executionengine.internal;
+
+public class WorkflowDrainedException extends RuntimeException {
+    public WorkflowDrainedException(String message) {
+        super(message);
+    }
+}
@@ -3,11 +3,16 @@ package club.kosya.lib.workflow;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.function.Supplier;
 
 public interface ExecutionContext {
     <R> R await(String name, Supplier<R> lambda);
 
+    <R> List<R> awaitAll(String name, List<Supplier<R>> lambdas);
+
+    <R> R scope(String name, Supplier<R> body);
+
     void sleep(Duration duration);
 
     void sleepUntil(Instant resumeAt);
@@ -3,6 +3,7 @@ package club.kosya.lib.workflow;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.function.Supplier;
 
 public final class ExecutionContextPlaceholder implements ExecutionContext {
@@ -13,6 +14,16 @@ public final class ExecutionContextPlaceholder implements ExecutionContext {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public <R> List<R> awaitAll(String name, List<Supplier<R>> lambdas) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <R> R scope(String name, Supplier<R> body) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public void sleep(Duration duration) {
         throw new UnsupportedOperationException();
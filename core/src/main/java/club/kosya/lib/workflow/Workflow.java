@@ -1,15 +1,24 @@
 package club.kosya.lib.workflow;
 
 import club.kosya.lib.executionengine.ExecutionStatus;
+import club.kosya.lib.executionengine.internal.BlobStore;
 import club.kosya.lib.executionengine.internal.Execution;
+import club.kosya.lib.executionengine.internal.ExecutionCancelledEvent;
+import club.kosya.lib.executionengine.internal.ExecutionQueuedEvent;
+import club.kosya.lib.executionengine.internal.ExecutionSignal;
+import club.kosya.lib.executionengine.internal.ExecutionSignalsRepository;
 import club.kosya.lib.executionengine.internal.ExecutionsRepository;
 import club.kosya.lib.lambda.TypedWorkflowLambda;
 import club.kosya.lib.lambda.WorkflowLambda;
 import club.kosya.lib.workflow.internal.WorkflowDefinitionConverter;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -17,8 +26,11 @@ import org.springframework.transaction.annotation.Transactional;
 @Component
 public class Workflow {
     private final ExecutionsRepository executions;
+    private final ExecutionSignalsRepository signals;
+    private final BlobStore blobs;
     private final ObjectMapper objectMapper;
     private final WorkflowDefinitionConverter converter;
+    private final ApplicationEventPublisher eventPublisher;
 
     @SneakyThrows
     @Transactional
@@ -39,11 +51,30 @@ public class Workflow {
         var task = new Execution();
         task.setStatus(ExecutionStatus.Queued);
         task.setQueuedAt(LocalDateTime.now());
+        task.setWorkflowType(definition.getServiceIdentifier().className());
 
+        var offloaded = offloadLargeParameters(definition);
         task.setDefinition(objectMapper.writeValueAsString(definition).getBytes());
         task.setParams(objectMapper.writeValueAsString(definition.getParameters()));
 
-        return executions.save(task).getId();
+        var executionId = executions.save(task).getId();
+        blobs.link(executionId, offloaded);
+        eventPublisher.publishEvent(new ExecutionQueuedEvent(executionId, task.getWorkflowType()));
+        return executionId;
+    }
+
+    // Large values are kept out of both the definition and the params columns
+    private List<String> offloadLargeParameters(WorkflowDefinition definition) {
+        var hashes = new ArrayList<String>();
+        for (var parameter : definition.getParameters()) {
+            var value = parameter.getValue() != null ? parameter.getValue().toString() : null;
+            if (blobs.shouldOffload(value)) {
+                parameter.setBlobRef(blobs.write(value));
+                parameter.setValue(null);
+                hashes.add(parameter.getBlobRef());
+            }
+        }
+        return hashes;
     }
 
     @Transactional
@@ -58,8 +89,20 @@ public class Workflow {
             throw new IllegalStateException("Cannot cancel execution with status: " + execution.getStatus());
         }
 
+        var ownerNode = execution.getStatus() == ExecutionStatus.Running ? execution.getOwnerNode() : null;
+
         execution.setStatus(ExecutionStatus.Cancelled);
         execution.setCompletedAt(LocalDateTime.now());
         executions.save(execution);
+
+        if (ownerNode != null) {
+            var signal = new ExecutionSignal();
+            signal.setExecutionId(executionId);
+            signal.setType(ExecutionSignal.Type.Cancel);
+            signal.setOwnerNode(ownerNode);
+            signal.setSignalledAt(Instant.now());
+            signals.save(signal);
+        }
+        eventPublisher.publishEvent(new ExecutionCancelledEvent(executionId));
     }
 }
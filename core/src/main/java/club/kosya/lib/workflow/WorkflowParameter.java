@@ -1,5 +1,6 @@
 package club.kosya.lib.workflow;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
 @Data
@@ -7,4 +8,7 @@ public class WorkflowParameter {
     private String name;
     private String type;
     private Object value;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String blobRef;
 }
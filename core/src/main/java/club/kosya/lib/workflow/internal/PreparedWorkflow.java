@@ -0,0 +1,6 @@
+package club.kosya.lib.workflow.internal;
+
+import java.lang.reflect.Method;
+
+// Arguments hold ExecutionContext.Placeholder where the running context is passed in
+public record PreparedWorkflow(Object bean, Method method, Object[] arguments) {}
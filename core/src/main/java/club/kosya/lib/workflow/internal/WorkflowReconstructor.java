@@ -15,13 +15,18 @@ public class WorkflowReconstructor {
     private final ObjectDeserializer objectDeserializer;
 
     public Object reconstructAndExecute(WorkflowDefinition definition, Supplier<ExecutionContext> executionCtxHolder) {
+        return execute(prepare(definition), executionCtxHolder);
+    }
+
+    @SneakyThrows
+    public PreparedWorkflow prepare(WorkflowDefinition definition) {
         var bean = instanceProvider.getInstance(definition.getServiceIdentifier());
 
         var methodArgs = new ArrayList<>();
 
         for (var param : definition.getParameters()) {
             if (param.getType() != null && param.getType().equals(ExecutionContext.class.getName())) {
-                methodArgs.add(executionCtxHolder.get());
+                methodArgs.add(ExecutionContext.Placeholder);
             } else {
                 methodArgs.add(objectDeserializer.deserialize(
                         param.getType(),
@@ -29,17 +34,23 @@ public class WorkflowReconstructor {
             }
         }
 
-        return invokeMethod(bean, definition.getMethodName(), methodArgs.toArray());
+        var paramTypes = getParameterTypes(bean, definition.getMethodName(), methodArgs.size() - 1);
+        var method = bean.getClass().getMethod(definition.getMethodName(), paramTypes);
+        method.setAccessible(true);
+
+        return new PreparedWorkflow(bean, method, methodArgs.toArray());
     }
 
     @SneakyThrows
-    private Object invokeMethod(Object bean, String methodName, Object[] args) {
-        var paramTypes = getParameterTypes(bean, methodName, args.length - 1);
-
-        var method = bean.getClass().getMethod(methodName, paramTypes);
-        method.setAccessible(true);
+    public Object execute(PreparedWorkflow workflow, Supplier<ExecutionContext> executionCtxHolder) {
+        var args = workflow.arguments().clone();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] == ExecutionContext.Placeholder) {
+                args[i] = executionCtxHolder.get();
+            }
+        }
 
-        return method.invoke(bean, args);
+        return workflow.method().invoke(workflow.bean(), args);
     }
 
     private Class<?>[] getParameterTypes(Object bean, String methodName, int paramCount) {
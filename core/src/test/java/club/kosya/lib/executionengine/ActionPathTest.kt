@@ -0,0 +1,53 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.ActionPath
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+class ActionPathTest {
+    @Test
+    fun `root level ids are sequential`() {
+        // Arrange
+        val path = ActionPath()
+
+        // Act
+        val ids = List(3) { path.next() }
+
+        // Assert
+        assertEquals(listOf("0", "1", "2"), ids)
+    }
+
+    @Test
+    fun `nested ids are prefixed with the enclosing action id`() {
+        // Arrange
+        val path = ActionPath()
+        path.next()
+        path.next()
+
+        // Act
+        path.enter()
+        val nested = List(2) { path.next() }
+        path.exit()
+        val next = path.next()
+
+        // Assert
+        assertEquals(listOf("1.0", "1.1"), nested)
+        assertEquals("2", next)
+    }
+
+    @Test
+    fun `nesting deeper than the initial capacity keeps every prefix`() {
+        // Arrange
+        val path = ActionPath()
+
+        // Act
+        val ids =
+            List(6) {
+                path.next()
+                path.next().also { path.enter() }
+            }
+
+        // Assert
+        assertEquals(listOf("1", "1.1", "1.1.1", "1.1.1.1", "1.1.1.1.1", "1.1.1.1.1.1"), ids)
+    }
+}
@@ -0,0 +1,46 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.AdaptivePollingInterval
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import java.time.Duration
+
+class AdaptivePollingIntervalTest {
+    @Test
+    fun `interval starts at the minimum`() {
+        // Arrange & Act
+        val interval = AdaptivePollingInterval(Duration.ofMillis(100), Duration.ofSeconds(10), 2.0)
+
+        // Assert
+        assertEquals(Duration.ofMillis(100), interval.current)
+    }
+
+    @Test
+    fun `interval backs off exponentially while idle and caps at the maximum`() {
+        // Arrange
+        val interval = AdaptivePollingInterval(Duration.ofMillis(100), Duration.ofMillis(1000), 2.0)
+
+        // Act
+        val observed =
+            (1..6).map {
+                interval.onIdle()
+                interval.current.toMillis()
+            }
+
+        // Assert
+        assertEquals(listOf(200L, 400L, 800L, 1000L, 1000L, 1000L), observed)
+    }
+
+    @Test
+    fun `interval snaps back to the minimum when work is found`() {
+        // Arrange
+        val interval = AdaptivePollingInterval(Duration.ofMillis(100), Duration.ofSeconds(10), 2.0)
+        repeat(5) { interval.onIdle() }
+
+        // Act
+        interval.onWorkFound()
+
+        // Assert
+        assertEquals(Duration.ofMillis(100), interval.current)
+    }
+}
@@ -0,0 +1,84 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.BlobStore
+import club.kosya.lib.executionengine.internal.DeflateCompressionCodec
+import club.kosya.lib.executionengine.internal.PayloadCodec
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito.*
+import org.springframework.jdbc.core.JdbcTemplate
+import java.sql.Timestamp
+import java.time.Instant
+
+class BlobStoreTest {
+    private lateinit var jdbcTemplate: JdbcTemplate
+    private lateinit var codec: PayloadCodec
+    private lateinit var blobs: BlobStore
+
+    @BeforeEach
+    fun setUp() {
+        jdbcTemplate = mock(JdbcTemplate::class.java)
+        val properties = WorkflowRunrProperties().apply { blobs.offloadThreshold = 10 }
+        codec = PayloadCodec(listOf(DeflateCompressionCodec()), properties)
+        blobs = BlobStore(jdbcTemplate, codec, properties)
+    }
+
+    @Test
+    fun `only values at or above the threshold are offloaded`() {
+        // Act & Assert
+        assertFalse(blobs.shouldOffload(null))
+        assertFalse(blobs.shouldOffload("123456789"))
+        assertTrue(blobs.shouldOffload("1234567890"))
+    }
+
+    @Test
+    fun `identical payloads share one content address`() {
+        // Arrange
+        val transcript = "\"" + "word ".repeat(1000) + "\""
+
+        // Act
+        val first = blobs.write(transcript).also { blobs.link(1L, listOf(it)) }
+        val second = blobs.write(transcript).also { blobs.link(2L, listOf(it)) }
+        val other = blobs.write("\"something else entirely\"")
+
+        // Assert
+        assertEquals(first, second)
+        assertNotEquals(first, other)
+        assertEquals(64, first.length)
+        verify(jdbcTemplate, times(2)).update(
+            startsWith("INSERT INTO execution_blobs"),
+            eq(first),
+            argThat<ByteArray> { codec.decodeText(it) == transcript },
+            any(),
+        )
+        verify(jdbcTemplate).update(startsWith("INSERT INTO execution_blob_refs"), eq(1L), eq(first))
+        verify(jdbcTemplate).update(startsWith("INSERT INTO execution_blob_refs"), eq(2L), eq(first))
+    }
+
+    @Test
+    fun `blobs of a finished execution are collected`() {
+        // Arrange
+        val statuses = mapOf(1L to ExecutionStatus.Completed, 2L to ExecutionStatus.Running)
+        val refs = mutableSetOf(1L to "finished", 2L to "running")
+        val stored = mutableSetOf("finished", "running")
+        `when`(jdbcTemplate.update(startsWith("DELETE r FROM execution_blob_refs"))).thenAnswer {
+            val released = refs.filter { statuses.getValue(it.first) != ExecutionStatus.Running }
+            refs.removeAll(released.toSet())
+            released.size
+        }
+        `when`(jdbcTemplate.update(startsWith("DELETE b FROM execution_blobs"), any(Timestamp::class.java))).thenAnswer {
+            val unreferenced = stored.filter { hash -> refs.none { it.second == hash } }
+            stored.removeAll(unreferenced.toSet())
+            unreferenced.size
+        }
+
+        // Act
+        val deleted = blobs.collect(Instant.now())
+
+        // Assert
+        assertEquals(1, deleted)
+        assertEquals(setOf("running"), stored)
+        assertEquals(setOf(2L to "running"), refs)
+    }
+}
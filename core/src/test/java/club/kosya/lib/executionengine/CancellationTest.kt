@@ -0,0 +1,159 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.deserialization.internal.ObjectDeserializerImpl
+import club.kosya.lib.executionengine.ExecutionContextImpl.executeProcess
+import club.kosya.lib.executionengine.internal.CancellationRegistry
+import club.kosya.lib.executionengine.internal.Execution
+import club.kosya.lib.executionengine.internal.ExecutionContextImpl
+import club.kosya.lib.executionengine.internal.ExecutionsRepository
+import club.kosya.lib.executionengine.internal.WorkflowCanceledException
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.mockito.Mockito.*
+import java.time.LocalDateTime
+import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class CancellationTest {
+    private lateinit var registry: CancellationRegistry
+
+    @BeforeEach
+    fun setUp() {
+        registry = CancellationRegistry()
+    }
+
+    @Test
+    fun `cancel kills the process started by the action`() {
+        // Arrange
+        val started = CountDownLatch(1)
+        val outcome = CompletableFuture<Throwable?>()
+        val worker =
+            Thread {
+                val token = registry.open(1L)
+                started.countDown()
+                try {
+                    executeProcess("sleep", "30")
+                    outcome.complete(null)
+                } catch (e: Throwable) {
+                    outcome.complete(e)
+                } finally {
+                    registry.close(token)
+                }
+            }
+        worker.start()
+        started.await()
+        Thread.sleep(200)
+
+        // Act
+        registry.cancel(1L)
+        val failure = outcome.get(10, TimeUnit.SECONDS)
+
+        // Assert
+        assertInstanceOf(WorkflowCanceledException::class.java, failure)
+    }
+
+    @Test
+    fun `cancel interrupts a worker blocked inside an action`() {
+        // Arrange
+        val started = CountDownLatch(1)
+        val interrupted = CompletableFuture<Boolean>()
+        val worker =
+            Thread {
+                val token = registry.open(2L)
+                try {
+                    token.interruptibly {
+                        started.countDown()
+                        Thread.sleep(30_000)
+                    }
+                    interrupted.complete(false)
+                } catch (e: InterruptedException) {
+                    interrupted.complete(true)
+                } finally {
+                    registry.close(token)
+                }
+            }
+        worker.start()
+        started.await()
+
+        // Act
+        registry.cancel(2L)
+
+        // Assert
+        assertTrue(interrupted.get(10, TimeUnit.SECONDS))
+    }
+
+    @Test
+    fun `cancel does not interrupt a worker outside action code`() {
+        // Arrange
+        val token = registry.open(5L)
+
+        try {
+            // Act
+            registry.cancel(5L)
+
+            // Assert
+            assertTrue(token.isCancelled)
+            assertFalse(Thread.currentThread().isInterrupted)
+        } finally {
+            registry.close(token)
+        }
+    }
+
+    @Test
+    fun `cancel after the run has finished does nothing`() {
+        // Arrange
+        val token = registry.open(3L)
+        registry.close(token)
+
+        // Act
+        val cancelled = registry.cancel(3L)
+
+        // Assert
+        assertFalse(cancelled)
+        assertFalse(token.isCancelled)
+        assertFalse(Thread.currentThread().isInterrupted)
+    }
+
+    @Test
+    fun `next action of a cancelled run is not started`() {
+        // Arrange
+        val objectMapper = ObjectMapper().registerModule(JavaTimeModule())
+        val executions = mock(ExecutionsRepository::class.java)
+        val execution =
+            Execution().apply {
+                id = 4L
+                status = ExecutionStatus.Running
+                queuedAt = LocalDateTime.now()
+                definition = byteArrayOf()
+                params = "{}"
+            }
+        `when`(executions.findById(4L)).thenReturn(Optional.of(execution))
+        `when`(executions.save(any(Execution::class.java))).thenReturn(execution)
+
+        val token = registry.open(4L)
+        val ctx = ExecutionContextImpl("4", objectMapper, executions, ObjectDeserializerImpl(objectMapper))
+        var ran = false
+
+        try {
+            // Act
+            registry.cancel(4L)
+
+            // Assert
+            assertThrows<WorkflowCanceledException> {
+                ctx.await("after cancel") {
+                    ran = true
+                    "done"
+                }
+            }
+            assertFalse(ran)
+        } finally {
+            registry.close(token)
+        }
+    }
+}
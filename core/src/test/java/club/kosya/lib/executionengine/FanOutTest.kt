@@ -0,0 +1,135 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.deserialization.internal.ObjectDeserializerImpl
+import club.kosya.lib.executionengine.internal.ActionThrottle
+import club.kosya.lib.executionengine.internal.ExecutedAction
+import club.kosya.lib.executionengine.internal.Execution
+import club.kosya.lib.executionengine.internal.ExecutionContextImpl
+import club.kosya.lib.executionengine.internal.ExecutionControl
+import club.kosya.lib.executionengine.internal.ExecutionFlow
+import club.kosya.lib.executionengine.internal.ExecutionsRepository
+import club.kosya.lib.executionengine.internal.ParallelBranchRunner
+import club.kosya.lib.executionengine.internal.SleepListener
+import club.kosya.lib.executionengine.internal.StateColumnFlowStore
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.mockito.Mockito.*
+import java.time.LocalDateTime
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.function.Supplier
+
+class FanOutTest {
+    private lateinit var objectMapper: ObjectMapper
+    private lateinit var executions: ExecutionsRepository
+    private lateinit var execution: Execution
+    private lateinit var runner: ParallelBranchRunner
+
+    @BeforeEach
+    fun setUp() {
+        objectMapper = ObjectMapper()
+        executions = mock(ExecutionsRepository::class.java)
+        runner = ParallelBranchRunner(WorkflowRunrProperties().apply { branches.parallelism = 4 })
+
+        execution =
+            Execution().apply {
+                id = 1L
+                status = ExecutionStatus.Running
+                queuedAt = LocalDateTime.now()
+                definition = byteArrayOf()
+                params = "{}"
+            }
+
+        `when`(executions.findById(1L)).thenReturn(Optional.of(execution))
+        `when`(executions.save(any(Execution::class.java))).thenReturn(execution)
+    }
+
+    @AfterEach
+    fun tearDown() {
+        runner.stop()
+    }
+
+    @Test
+    fun `branches run at the same time and results keep their order`() {
+        // Arrange
+        val ctx = context()
+        val allStarted = CountDownLatch(3)
+        val branches =
+            listOf("a", "b", "c").map { value ->
+                Supplier {
+                    allStarted.countDown()
+                    allStarted.await(5, TimeUnit.SECONDS)
+                    value
+                }
+            }
+
+        // Act
+        val results = ctx.awaitAll("transcode", branches)
+
+        // Assert
+        assertEquals(listOf("a", "b", "c"), results)
+        val flow = objectMapper.readValue(execution.state, ExecutionFlow::class.java)
+        assertEquals(listOf("0", "0.0", "0.1", "0.2"), flow.actions.map { it.id })
+        assertTrue(flow.actions.all { it.completed })
+    }
+
+    @Test
+    fun `replay runs only the branches that did not finish`() {
+        // Arrange
+        val recorded =
+            ExecutionFlow(
+                "1",
+                mutableListOf(
+                    ExecutedAction("0").apply { name = "transcode" },
+                    ExecutedAction("0.0", "transcode", "\"a\"", String::class.java.name, true, null),
+                    ExecutedAction("0.1").apply { name = "transcode" },
+                ),
+            )
+        execution.state = objectMapper.writeValueAsString(recorded)
+        val ran = Collections.synchronizedList(mutableListOf<Int>())
+        val branches =
+            listOf("a", "b", "c").mapIndexed { i, value ->
+                Supplier {
+                    ran.add(i)
+                    value
+                }
+            }
+
+        // Act
+        val results = context().awaitAll("transcode", branches)
+
+        // Assert
+        assertEquals(listOf("a", "b", "c"), results)
+        assertEquals(setOf(1, 2), ran.toSet())
+    }
+
+    @Test
+    fun `a branch cannot start actions of its own`() {
+        // Arrange
+        val ctx = context()
+
+        // Act & Assert
+        assertThrows<RuntimeException> {
+            ctx.awaitAll("outer", listOf(Supplier { ctx.await("inner") { "x" } }))
+        }
+        val flow = objectMapper.readValue(execution.state ?: "{}", ExecutionFlow::class.java)
+        assertTrue(flow.actions.none { it.name == "inner" })
+    }
+
+    private fun context() =
+        ExecutionContextImpl(
+            "1",
+            StateColumnFlowStore(executions, objectMapper).open(1L),
+            objectMapper,
+            ObjectDeserializerImpl(objectMapper),
+            SleepListener.NONE,
+            ExecutionControl(),
+            ActionThrottle.NONE,
+            runner,
+        )
+}
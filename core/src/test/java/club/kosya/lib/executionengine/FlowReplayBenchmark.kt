@@ -0,0 +1,72 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.deserialization.internal.ObjectDeserializerImpl
+import club.kosya.lib.executionengine.internal.ExecutedAction
+import club.kosya.lib.executionengine.internal.Execution
+import club.kosya.lib.executionengine.internal.ExecutionContextImpl
+import club.kosya.lib.executionengine.internal.ExecutionFlow
+import club.kosya.lib.executionengine.internal.ExecutionsRepository
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito.*
+import java.time.LocalDateTime
+import java.util.*
+
+@Tag("benchmark")
+class FlowReplayBenchmark {
+    private lateinit var objectMapper: ObjectMapper
+    private lateinit var executions: ExecutionsRepository
+    private lateinit var execution: Execution
+    private lateinit var deserializer: ObjectDeserializerImpl
+
+    @BeforeEach
+    fun setUp() {
+        objectMapper = ObjectMapper()
+        executions = mock(ExecutionsRepository::class.java)
+        deserializer = ObjectDeserializerImpl(objectMapper)
+
+        execution =
+            Execution().apply {
+                id = 1L
+                status = ExecutionStatus.Running
+                queuedAt = LocalDateTime.now()
+                definition = byteArrayOf()
+                params = "{}"
+            }
+
+        `when`(executions.findById(1L)).thenReturn(Optional.of(execution))
+        `when`(executions.save(any(Execution::class.java))).thenReturn(execution)
+    }
+
+    @Test
+    fun `replay time grows linearly with the number of actions`() {
+        // Arrange
+        val sizes = listOf(5_000, 10_000, 20_000)
+        repeat(3) { replay(sizes.last()) }
+
+        // Act
+        val timings = sizes.associateWith { size -> (1..5).minOf { replay(size) } }
+
+        // Assert
+        val growth = timings.getValue(20_000).toDouble() / timings.getValue(5_000)
+        val millis = timings.mapValues { it.value / 1_000_000 }
+        assertTrue(growth < 8, "expected roughly x4 for x4 actions but replay slowed down x$growth, ms by size: $millis")
+    }
+
+    private fun replay(size: Int): Long {
+        val flow =
+            ExecutionFlow(
+                "1",
+                MutableList(size) { ExecutedAction(it.toString(), "step", "\"done\"", "java.lang.String", true, null) },
+            )
+        execution.state = objectMapper.writeValueAsString(flow)
+        val ctx = ExecutionContextImpl("1", objectMapper, executions, deserializer)
+
+        val started = System.nanoTime()
+        repeat(size) { ctx.action("step") { "not replayed" } }
+        return System.nanoTime() - started
+    }
+}
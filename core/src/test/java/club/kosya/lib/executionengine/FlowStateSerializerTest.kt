@@ -0,0 +1,67 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.ExecutedAction
+import club.kosya.lib.executionengine.internal.Execution
+import club.kosya.lib.executionengine.internal.ExecutionFlow
+import club.kosya.lib.executionengine.internal.FlowStateFormat
+import club.kosya.lib.executionengine.internal.FlowStateSerializer
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import java.time.Instant
+
+class FlowStateSerializerTest {
+    private val objectMapper = ObjectMapper().registerModule(JavaTimeModule())
+    private val serializer = FlowStateSerializer(objectMapper)
+
+    private val flow =
+        ExecutionFlow(
+            "1",
+            mutableListOf(
+                ExecutedAction("0", "transcribe", """{"text":"say \"hi\"","segments":[1,2,3]}""", "java.lang.String", true, null),
+                ExecutedAction("1", "sleep", null, null, false, Instant.parse("2026-03-01T10:00:00Z")),
+            ),
+        )
+
+    @Test
+    fun `binary state round trips and clears the text column`() {
+        // Arrange
+        val execution = Execution().apply { state = "{}" }
+
+        // Act
+        serializer.write(execution, flow, FlowStateFormat.CBOR)
+        val restored = serializer.read(execution)
+
+        // Assert
+        assertNull(execution.state)
+        assertNotNull(execution.stateData)
+        assertEquals(flow, restored)
+    }
+
+    @Test
+    fun `text rows written before the binary format are still read`() {
+        // Arrange
+        val execution = Execution().apply { state = objectMapper.writeValueAsString(flow) }
+
+        // Act
+        val restored = serializer.read(execution)
+
+        // Assert
+        assertEquals(flow, restored)
+    }
+
+    @Test
+    fun `binary state is smaller than text for escaped results`() {
+        // Arrange
+        val text = Execution()
+        val binary = Execution()
+
+        // Act
+        serializer.write(text, flow, FlowStateFormat.JSON)
+        serializer.write(binary, flow, FlowStateFormat.CBOR)
+
+        // Assert
+        assertTrue(binary.stateData!!.size < text.state!!.toByteArray().size)
+    }
+}
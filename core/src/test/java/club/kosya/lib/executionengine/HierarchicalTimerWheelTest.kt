@@ -0,0 +1,122 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.HierarchicalTimerWheel
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+class HierarchicalTimerWheelTest {
+    @Test
+    fun `timer fires at its deadline and not before`() {
+        // Arrange
+        val wheel = HierarchicalTimerWheel<Long>(10, 0)
+        wheel.schedule(1L, 250)
+
+        // Act
+        val early = wheel.advanceTo(240)
+        val onTime = wheel.advanceTo(250)
+
+        // Assert
+        assertTrue(early.isEmpty())
+        assertEquals(listOf(1L), onTime)
+        assertEquals(0, wheel.size)
+    }
+
+    @Test
+    fun `sub-tick deadline is rounded up to the next tick`() {
+        // Arrange
+        val wheel = HierarchicalTimerWheel<Long>(10, 0)
+        wheel.schedule(1L, 15)
+
+        // Act
+        val early = wheel.advanceTo(19)
+        val onTime = wheel.advanceTo(20)
+
+        // Assert
+        assertTrue(early.isEmpty())
+        assertEquals(listOf(1L), onTime)
+    }
+
+    @Test
+    fun `timers on higher levels cascade down and fire on time`() {
+        // Arrange
+        val wheel = HierarchicalTimerWheel<Long>(1, 0)
+        val deadlines = listOf(63L, 64L, 65L, 4_095L, 4_096L, 70_000L, 300_000L)
+        deadlines.forEachIndexed { key, deadline -> wheel.schedule(key.toLong(), deadline) }
+
+        // Act
+        val firedAt = mutableMapOf<Long, Long>()
+        var now = 0L
+        while (now < 300_000L) {
+            now += 7
+            wheel.advanceTo(now).forEach { firedAt[it] = now }
+        }
+
+        // Assert
+        deadlines.forEachIndexed { key, deadline ->
+            val fired = firedAt[key.toLong()]
+            assertNotNull(fired, "timer $key should fire")
+            assertTrue(fired!! >= deadline && fired < deadline + 7, "timer $key fired at $fired for deadline $deadline")
+        }
+    }
+
+    @Test
+    fun `timer beyond the wheel span still fires`() {
+        // Arrange
+        val wheel = HierarchicalTimerWheel<Long>(1, 0)
+        val deadline = (1L shl 24) + 5
+
+        wheel.schedule(1L, deadline)
+
+        // Act
+        val early = wheel.advanceTo(deadline - 1)
+        val onTime = wheel.advanceTo(deadline)
+
+        // Assert
+        assertTrue(early.isEmpty())
+        assertEquals(listOf(1L), onTime)
+    }
+
+    @Test
+    fun `cancelled timer does not fire`() {
+        // Arrange
+        val wheel = HierarchicalTimerWheel<Long>(10, 0)
+        wheel.schedule(1L, 100)
+        wheel.schedule(2L, 100)
+
+        // Act
+        wheel.cancel(1L)
+        val fired = wheel.advanceTo(1_000)
+
+        // Assert
+        assertEquals(listOf(2L), fired)
+    }
+
+    @Test
+    fun `rescheduling a key replaces its previous deadline`() {
+        // Arrange
+        val wheel = HierarchicalTimerWheel<Long>(10, 0)
+        wheel.schedule(1L, 100)
+
+        // Act
+        wheel.schedule(1L, 500)
+        val atOldDeadline = wheel.advanceTo(100)
+        val atNewDeadline = wheel.advanceTo(500)
+
+        // Assert
+        assertTrue(atOldDeadline.isEmpty())
+        assertEquals(listOf(1L), atNewDeadline)
+    }
+
+    @Test
+    fun `deadline in the past fires on the next advance`() {
+        // Arrange
+        val wheel = HierarchicalTimerWheel<Long>(10, 1_000)
+
+        // Act
+        wheel.schedule(1L, 500)
+        val fired = wheel.advanceTo(1_000)
+
+        // Assert
+        assertEquals(listOf(1L), fired)
+    }
+}
@@ -0,0 +1,390 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.deserialization.internal.ObjectDeserializerImpl
+import club.kosya.lib.executionengine.internal.ActionThrottle
+import club.kosya.lib.executionengine.internal.BlobStore
+import club.kosya.lib.executionengine.internal.BranchRunner
+import club.kosya.lib.executionengine.internal.DeflateCompressionCodec
+import club.kosya.lib.executionengine.internal.ExecutedAction
+import club.kosya.lib.executionengine.internal.Execution
+import club.kosya.lib.executionengine.internal.ExecutionContextImpl
+import club.kosya.lib.executionengine.internal.ExecutionControl
+import club.kosya.lib.executionengine.internal.ExecutionFlow
+import club.kosya.lib.executionengine.internal.ExecutionsRepository
+import club.kosya.lib.executionengine.internal.FlowStateFormat
+import club.kosya.lib.executionengine.internal.JournalFlowStore
+import club.kosya.lib.executionengine.internal.PayloadCodec
+import club.kosya.lib.executionengine.internal.SleepListener
+import club.kosya.lib.executionengine.internal.StaleExecutionException
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.mockito.Mockito.*
+import org.springframework.dao.CannotAcquireLockException
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter
+import org.springframework.jdbc.core.RowMapper
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.SimpleTransactionStatus
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.time.Duration
+import java.util.*
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+
+class JournalFlowStoreTest {
+    private lateinit var executions: ExecutionsRepository
+    private lateinit var jdbcTemplate: JdbcTemplate
+    private lateinit var transactionManager: PlatformTransactionManager
+    private lateinit var store: JournalFlowStore
+    private val versionBatches = CopyOnWriteArrayList<List<Long>>()
+    private val journaledIds = CopyOnWriteArrayList<Long>()
+    private val journaledRows = CopyOnWriteArrayList<Map<Int, Any?>>()
+    private val staleIds = mutableSetOf<Long>()
+    private var lockFailures = 0
+    private val codec = PayloadCodec(listOf(DeflateCompressionCodec()), WorkflowRunrProperties())
+
+    @BeforeEach
+    fun setUp() {
+        executions = mock(ExecutionsRepository::class.java)
+        jdbcTemplate = mock(JdbcTemplate::class.java)
+        transactionManager = mock(PlatformTransactionManager::class.java)
+        `when`(transactionManager.getTransaction(any())).thenReturn(SimpleTransactionStatus())
+
+        `when`(
+            jdbcTemplate.batchUpdate(
+                anyString(),
+                anyCollection<Any>(),
+                anyInt(),
+                any<ParameterizedPreparedStatementSetter<Any>>(),
+            ),
+        ).thenAnswer { invocation ->
+            val sql = invocation.getArgument<String>(0)
+            val batch = invocation.getArgument<Collection<Any>>(1)
+            val setter = invocation.getArgument<ParameterizedPreparedStatementSetter<Any>>(3)
+            val ids = batch.map { executionIdOf(setter, it) }
+
+            if (sql.startsWith("UPDATE executions")) {
+                if (lockFailures > 0) {
+                    lockFailures--
+                    throw CannotAcquireLockException("Lock wait timeout exceeded")
+                }
+                versionBatches.add(ids)
+                arrayOf(ids.map { if (it in staleIds) 0 else 1 }.toIntArray())
+            } else {
+                journaledIds.addAll(ids)
+                batch.forEach { journaledRows.add(parametersOf(setter, it)) }
+                arrayOf(IntArray(ids.size) { 1 })
+            }
+        }
+
+        store = store(WorkflowRunrProperties().apply { checkpoints.linger = Duration.ofMillis(50) })
+        store.start()
+    }
+
+    @AfterEach
+    fun tearDown() {
+        store.stop()
+    }
+
+    @Test
+    fun `concurrent checkpoints are flushed together and each gets its new version`() {
+        // Arrange
+        val pool = Executors.newFixedThreadPool(4)
+        val ready = CountDownLatch(4)
+
+        // Act
+        val versions =
+            (1L..4L)
+                .map { id ->
+                    pool.submit<Long?> {
+                        ready.countDown()
+                        ready.await()
+                        checkpoint(id, 10)
+                    }
+                }.map { it.get() }
+        pool.shutdown()
+
+        // Assert
+        assertEquals(listOf(11L, 11L, 11L, 11L), versions)
+        assertTrue(versionBatches.size < 4, "expected grouped flushes but got $versionBatches")
+        assertEquals((1L..4L).toSet(), journaledIds.toSet())
+        assertTrue(versionBatches.all { it == it.sorted() }, "expected rows bumped in id order but got $versionBatches")
+    }
+
+    @Test
+    fun `checkpoint against a newer version is rejected and not journaled`() {
+        // Arrange
+        staleIds.add(7L)
+
+        // Act
+        assertThrows<StaleExecutionException> {
+            checkpoint(7L, 3)
+        }
+
+        // Assert
+        assertFalse(7L in journaledIds)
+    }
+
+    @Test
+    fun `flush that hits a lock timeout is retried before the checkpoint fails`() {
+        // Arrange
+        lockFailures = 1
+
+        // Act
+        val version = checkpoint(9L, 4)
+
+        // Assert
+        assertEquals(5L, version)
+        assertEquals(listOf(listOf(9L)), versionBatches)
+        assertTrue(9L in journaledIds)
+    }
+
+    @Test
+    fun `restore leaves large results in the store until their action is replayed`() {
+        // Arrange
+        val transcript = "\"" + "word ".repeat(10_000) + "\""
+        `when`(executions.findById(5L)).thenReturn(
+            Optional.of(
+                Execution().apply {
+                    id = 5L
+                    status = ExecutionStatus.Running
+                    version = 1L
+                },
+            ),
+        )
+
+        val indexRow = mock(ResultSet::class.java)
+        `when`(indexRow.getString("action_id")).thenReturn("0")
+        `when`(indexRow.getString("name")).thenReturn("transcribe")
+        `when`(indexRow.getString("result_type")).thenReturn("java.lang.String")
+        `when`(indexRow.getBoolean("completed")).thenReturn(true)
+        `when`(indexRow.getBoolean("deferred")).thenReturn(true)
+        `when`(jdbcTemplate.query(startsWith("SELECT a.action_id"), any<RowMapper<ExecutedAction>>(), any(), any(), eq(5L)))
+            .thenAnswer { invocation -> listOf(invocation.getArgument<RowMapper<ExecutedAction>>(1).mapRow(indexRow, 0)) }
+        `when`(jdbcTemplate.query(startsWith("SELECT result"), any<RowMapper<String>>(), eq(5L), eq("0")))
+            .thenReturn(listOf(transcript))
+
+        val unitOfWork = store.open(5L)!!
+
+        // Act
+        val flow = unitOfWork.restoreFlow()!!
+        val restored = flow.actions.single()
+        val replayed = unitOfWork.replayResult(restored)
+
+        // Assert
+        assertTrue(restored.completed)
+        assertNull(restored.result)
+        assertEquals(transcript, replayed)
+        assertNull(restored.result, "replayed result should not be kept in the flow")
+    }
+
+    @Test
+    fun `large result is left in the store once it is journaled`() {
+        // Arrange
+        `when`(executions.findById(10L)).thenReturn(
+            Optional.of(
+                Execution().apply {
+                    id = 10L
+                    status = ExecutionStatus.Running
+                    version = 1L
+                },
+            ),
+        )
+        val transcript = ExecutedAction("0", "transcribe", "\"" + "word ".repeat(10_000) + "\"", "java.lang.String", true, null)
+        val meta = ExecutedAction("1", "probe", "\"meta\"", "java.lang.String", true, null)
+        val flow = ExecutionFlow("10", mutableListOf(transcript, meta))
+        val unitOfWork = store.open(10L)!!
+
+        // Act
+        unitOfWork.checkpoint(flow, transcript)
+        unitOfWork.checkpoint(flow, meta)
+
+        // Assert
+        assertNull(transcript.result)
+        assertTrue(transcript.resultDeferred)
+        assertEquals("\"meta\"", meta.result)
+        assertEquals(3L, unitOfWork.execution.version)
+    }
+
+    @Test
+    fun `text snapshot is rewritten once in the configured binary format`() {
+        // Arrange
+        val binaryStore = store(WorkflowRunrProperties().apply { state.format = FlowStateFormat.CBOR })
+        val flow =
+            ExecutionFlow(
+                "6",
+                mutableListOf(ExecutedAction("0", "transcribe", """{"text":"say \"hi\""}""", "java.lang.String", true, null)),
+            )
+        `when`(executions.findById(6L)).thenReturn(
+            Optional.of(
+                Execution().apply {
+                    id = 6L
+                    status = ExecutionStatus.Running
+                    version = 1L
+                    state = ObjectMapper().writeValueAsString(flow)
+                },
+            ),
+        )
+        var written: Array<Any?> = emptyArray()
+        `when`(jdbcTemplate.update(startsWith("UPDATE executions SET state"), any(), any(), any(), any()))
+            .thenAnswer { invocation -> 1.also { written = invocation.arguments } }
+
+        // Act
+        val converted = binaryStore.open(6L)!!
+        val restored = converted.restoreFlow()
+        val reread =
+            Execution().apply {
+                id = 6L
+                version = converted.execution.version
+                state = codec.decodeText(written[1] as ByteArray?)
+                stateData = codec.decode(written[2] as ByteArray)
+            }
+        `when`(executions.findById(6L)).thenReturn(Optional.of(reread))
+        val restoredAgain = binaryStore.open(6L)!!.restoreFlow()
+
+        // Assert
+        assertEquals(flow, restored)
+        assertEquals(flow, restoredAgain)
+        assertNull(written[1])
+        assertEquals(2L, converted.execution.version)
+        verify(jdbcTemplate, times(1)).update(startsWith("UPDATE executions SET state"), any(), any(), any(), any())
+    }
+
+    @Test
+    fun `actions inside a scope are journaled with the scope that encloses them`() {
+        // Arrange
+        `when`(executions.findById(8L)).thenReturn(
+            Optional.of(
+                Execution().apply {
+                    id = 8L
+                    status = ExecutionStatus.Running
+                    version = 1L
+                },
+            ),
+        )
+        val objectMapper = ObjectMapper()
+        val ctx =
+            ExecutionContextImpl(
+                "8",
+                store.open(8L),
+                objectMapper,
+                ObjectDeserializerImpl(objectMapper),
+                SleepListener.NONE,
+                ExecutionControl(),
+                ActionThrottle.NONE,
+                BranchRunner.SEQUENTIAL,
+            )
+
+        // Act
+        ctx.scope("prepare") { ctx.await("download") { "video" } }
+        ctx.await("publish") { "done" }
+
+        // Assert
+        val enclosingScopes = journaledRows.associate { it[2] to it[10] }
+        assertEquals(mapOf("0.0" to "0", "0" to null, "1" to null), enclosingScopes)
+        assertEquals(true, journaledRows.single { it[2] == "0" }[9])
+    }
+
+    @Test
+    fun `action after a restored scope is journaled past the rows restore left out`() {
+        // Arrange
+        `when`(executions.findById(11L)).thenReturn(
+            Optional.of(
+                Execution().apply {
+                    id = 11L
+                    status = ExecutionStatus.Running
+                    version = 1L
+                },
+            ),
+        )
+        val scopeRow = mock(ResultSet::class.java)
+        `when`(scopeRow.getString("action_id")).thenReturn("0")
+        `when`(scopeRow.getString("name")).thenReturn("prepare")
+        `when`(scopeRow.getString("result_type")).thenReturn("java.lang.String")
+        `when`(scopeRow.getBytes("inline_result")).thenReturn(codec.encodeText("\"video\""))
+        `when`(scopeRow.getBoolean("completed")).thenReturn(true)
+        `when`(scopeRow.getBoolean("scope")).thenReturn(true)
+        `when`(jdbcTemplate.query(startsWith("SELECT a.action_id"), any<RowMapper<ExecutedAction>>(), any(), any(), eq(11L)))
+            .thenAnswer { invocation -> listOf(invocation.getArgument<RowMapper<ExecutedAction>>(1).mapRow(scopeRow, 0)) }
+        `when`(jdbcTemplate.queryForObject(startsWith("SELECT COALESCE(MAX(position)"), eq(Int::class.java), eq(11L)))
+            .thenReturn(2)
+        val objectMapper = ObjectMapper()
+        val ctx =
+            ExecutionContextImpl(
+                "11",
+                store.open(11L),
+                objectMapper,
+                ObjectDeserializerImpl(objectMapper),
+                SleepListener.NONE,
+                ExecutionControl(),
+                ActionThrottle.NONE,
+                BranchRunner.SEQUENTIAL,
+            )
+
+        // Act
+        val prepared = ctx.scope("prepare") { ctx.await("download") { "other" } }
+        ctx.await("publish") { "done" }
+
+        // Assert
+        assertEquals("video", prepared)
+        assertEquals(2, journaledRows.single { it[2] == "1" }[3])
+    }
+
+    private fun store(properties: WorkflowRunrProperties) =
+        JournalFlowStore(
+            executions,
+            jdbcTemplate,
+            ObjectMapper(),
+            BlobStore(jdbcTemplate, codec, properties),
+            codec,
+            transactionManager,
+            properties,
+        )
+
+    private fun checkpoint(
+        executionId: Long,
+        version: Long,
+    ): Long? {
+        val execution =
+            Execution().apply {
+                id = executionId
+                status = ExecutionStatus.Running
+                this.version = version
+            }
+        `when`(executions.findById(executionId)).thenReturn(Optional.of(execution))
+
+        val action = ExecutedAction("0").apply { completed = true }
+        val flow = ExecutionFlow(executionId.toString(), mutableListOf(action))
+        store.open(executionId)!!.checkpoint(flow, action)
+        return execution.version
+    }
+
+    private fun parametersOf(
+        setter: ParameterizedPreparedStatementSetter<Any>,
+        checkpoint: Any,
+    ): Map<Int, Any?> {
+        val ps = mock(PreparedStatement::class.java)
+        setter.setValues(ps, checkpoint)
+
+        return mockingDetails(ps).invocations.associate { it.arguments[0] as Int to it.arguments[1] }
+    }
+
+    private fun executionIdOf(
+        setter: ParameterizedPreparedStatementSetter<Any>,
+        checkpoint: Any,
+    ): Long {
+        val ps = mock(PreparedStatement::class.java)
+        setter.setValues(ps, checkpoint)
+
+        return mockingDetails(ps)
+            .invocations
+            .single { it.method.name == "setLong" && it.arguments[0] == 1 }
+            .arguments[1] as Long
+    }
+}
@@ -0,0 +1,117 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.deserialization.internal.ObjectDeserializerImpl
+import club.kosya.lib.executionengine.internal.Execution
+import club.kosya.lib.executionengine.internal.ExecutionContextImpl
+import club.kosya.lib.executionengine.internal.ExecutionsRepository
+import club.kosya.lib.executionengine.internal.LeaseLostException
+import club.kosya.lib.executionengine.internal.WorkflowCanceledException
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.mockito.Mockito.*
+import org.springframework.orm.ObjectOptimisticLockingFailureException
+import java.time.LocalDateTime
+import java.util.*
+
+class LeaseFencingTest {
+    private lateinit var objectMapper: ObjectMapper
+    private lateinit var executions: ExecutionsRepository
+    private lateinit var stored: Execution
+    private lateinit var deserializer: ObjectDeserializerImpl
+
+    @BeforeEach
+    fun setUp() {
+        objectMapper = ObjectMapper().registerModule(JavaTimeModule())
+        executions = mock(ExecutionsRepository::class.java)
+        deserializer = ObjectDeserializerImpl(objectMapper)
+
+        stored =
+            Execution().apply {
+                id = 1L
+                status = ExecutionStatus.Running
+                queuedAt = LocalDateTime.now()
+                definition = byteArrayOf()
+                params = "{}"
+                ownerNode = "node-a"
+                version = 3L
+            }
+
+        `when`(executions.findById(1L)).thenAnswer { Optional.of(copyOf(stored)) }
+        `when`(executions.save(any(Execution::class.java))).thenAnswer { invocation ->
+            val saved = invocation.getArgument(0) as Execution
+            if (saved.version != stored.version) {
+                throw ObjectOptimisticLockingFailureException(Execution::class.java, saved.id)
+            }
+            stored = copyOf(saved).apply { version = saved.version!! + 1 }
+            copyOf(stored)
+        }
+    }
+
+    @Test
+    fun `owner keeps writing while the version only moves with its own saves`() {
+        // Arrange
+        val ctx = ExecutionContextImpl("1", objectMapper, executions, deserializer)
+
+        // Act
+        val first = ctx.await("first") { "a" }
+        val second = ctx.await("second") { "b" }
+
+        // Assert
+        assertEquals("a", first)
+        assertEquals("b", second)
+        assertEquals(5L, stored.version)
+    }
+
+    @Test
+    fun `write after another node took over the execution is rejected`() {
+        // Arrange
+        val ctx = ExecutionContextImpl("1", objectMapper, executions, deserializer)
+        ctx.await("first") { "a" }
+        val stateBeforeTakeover = stored.state
+
+        stored.ownerNode = "node-b"
+        stored.version = stored.version!! + 1
+
+        // Act
+        val exception =
+            assertThrows<LeaseLostException> {
+                ctx.await("second") { "b" }
+            }
+
+        // Assert
+        assertTrue(exception.message!!.contains("node-b"))
+        assertEquals(stateBeforeTakeover, stored.state)
+    }
+
+    @Test
+    fun `write after the execution was cancelled stops the workflow`() {
+        // Arrange
+        val ctx = ExecutionContextImpl("1", objectMapper, executions, deserializer)
+        ctx.await("first") { "a" }
+
+        stored.status = ExecutionStatus.Cancelled
+        stored.version = stored.version!! + 1
+
+        // Act & Assert
+        assertThrows<WorkflowCanceledException> {
+            ctx.await("second") { "b" }
+        }
+    }
+
+    private fun copyOf(execution: Execution): Execution =
+        Execution().apply {
+            id = execution.id
+            status = execution.status
+            queuedAt = execution.queuedAt
+            definition = execution.definition
+            params = execution.params
+            state = execution.state
+            wakeAt = execution.wakeAt
+            ownerNode = execution.ownerNode
+            version = execution.version
+        }
+}
@@ -0,0 +1,60 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.DeflateCompressionCodec
+import club.kosya.lib.executionengine.internal.PayloadCodec
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+class PayloadCodecTest {
+    private val codec = PayloadCodec(listOf(DeflateCompressionCodec()), WorkflowRunrProperties())
+
+    @Test
+    fun `large payloads are compressed and read back`() {
+        // Arrange
+        val transcript = "\"" + "the quick brown fox jumps over the lazy dog ".repeat(500) + "\""
+
+        // Act
+        val stored = codec.encodeText(transcript)!!
+
+        // Assert
+        assertTrue(stored.size * 5 < transcript.length, "expected at least 5x compression but got ${stored.size} bytes")
+        assertEquals(transcript, codec.decodeText(stored))
+    }
+
+    @Test
+    fun `small payloads are stored as plain text`() {
+        // Arrange
+        val result = """{"value":"test","count":42}"""
+
+        // Act
+        val stored = codec.encodeText(result)!!
+
+        // Assert
+        assertEquals(result, String(stored))
+        assertEquals(result, codec.decodeText(stored))
+    }
+
+    @Test
+    fun `rows written before compression are read as they are`() {
+        // Arrange
+        val legacy = """{"id":"1","actions":[]}""".repeat(100).toByteArray()
+
+        // Act
+        val decoded = codec.decode(legacy)
+
+        // Assert
+        assertArrayEquals(legacy, decoded)
+    }
+
+    @Test
+    fun `raw payload that starts like a header survives a round trip`() {
+        // Arrange
+        val value = "\u001F\u0001 not actually compressed"
+
+        // Act
+        val stored = codec.encodeText(value)
+
+        // Assert
+        assertEquals(value, codec.decodeText(stored))
+    }
+}
@@ -0,0 +1,125 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.deserialization.internal.ObjectDeserializerImpl
+import club.kosya.lib.executionengine.internal.ExecutedAction
+import club.kosya.lib.executionengine.internal.Execution
+import club.kosya.lib.executionengine.internal.ExecutionContextImpl
+import club.kosya.lib.executionengine.internal.ExecutionFlow
+import club.kosya.lib.executionengine.internal.ExecutionsRepository
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito.*
+import java.time.LocalDateTime
+import java.util.*
+
+class ScopeTest {
+    private lateinit var objectMapper: ObjectMapper
+    private lateinit var executions: ExecutionsRepository
+    private lateinit var execution: Execution
+    private lateinit var deserializer: ObjectDeserializerImpl
+
+    @BeforeEach
+    fun setUp() {
+        objectMapper = ObjectMapper()
+        executions = mock(ExecutionsRepository::class.java)
+        deserializer = ObjectDeserializerImpl(objectMapper)
+
+        execution =
+            Execution().apply {
+                id = 1L
+                status = ExecutionStatus.Running
+                queuedAt = LocalDateTime.now()
+                definition = byteArrayOf()
+                params = "{}"
+            }
+
+        `when`(executions.findById(1L)).thenReturn(Optional.of(execution))
+        `when`(executions.save(any(Execution::class.java))).thenReturn(execution)
+    }
+
+    @Test
+    fun `actions inside a scope are nested under its id`() {
+        // Arrange
+        val ctx = ExecutionContextImpl("1", objectMapper, executions, deserializer)
+
+        // Act
+        val prepared =
+            ctx.scope("prepare") {
+                ctx.await("download") { "video" } + "+" + ctx.await("probe") { "meta" }
+            }
+        ctx.await("publish") { "done" }
+
+        // Assert
+        assertEquals("video+meta", prepared)
+        val flow = objectMapper.readValue(execution.state, ExecutionFlow::class.java)
+        assertEquals(listOf("0", "0.0", "0.1", "1"), flow.actions.map { it.id })
+        val scope = flow.find("0")!!
+        assertTrue(scope.scope)
+        assertTrue(scope.completed)
+        assertEquals("\"video+meta\"", scope.result)
+    }
+
+    @Test
+    fun `completed scope is replayed from its result without running the body`() {
+        // Arrange
+        val recorded =
+            ExecutionFlow(
+                "1",
+                mutableListOf(
+                    ExecutedAction("0.0", "download", "\"video\"", String::class.java.name, true, null),
+                    ExecutedAction("0", "prepare", "\"video+meta\"", String::class.java.name, true, null, scope = true),
+                ),
+            )
+        execution.state = objectMapper.writeValueAsString(recorded)
+        val ctx = ExecutionContextImpl("1", objectMapper, executions, deserializer)
+        var bodyRan = false
+
+        // Act
+        val prepared =
+            ctx.scope("prepare") {
+                bodyRan = true
+                ctx.await("download") { "other" }
+            }
+        val next = ctx.await("publish") { "done" }
+
+        // Assert
+        assertEquals("video+meta", prepared)
+        assertEquals("done", next)
+        assertFalse(bodyRan)
+        val flow = objectMapper.readValue(execution.state, ExecutionFlow::class.java)
+        assertEquals("publish", flow.find("1")!!.name)
+    }
+
+    @Test
+    fun `scope interrupted before completing runs again and replays finished children`() {
+        // Arrange
+        val recorded =
+            ExecutionFlow(
+                "1",
+                mutableListOf(
+                    ExecutedAction("0").apply { name = "prepare" },
+                    ExecutedAction("0.0", "download", "\"video\"", String::class.java.name, true, null),
+                ),
+            )
+        execution.state = objectMapper.writeValueAsString(recorded)
+        val ctx = ExecutionContextImpl("1", objectMapper, executions, deserializer)
+        var downloads = 0
+
+        // Act
+        val prepared =
+            ctx.scope("prepare") {
+                val video =
+                    ctx.await("download") {
+                        downloads++
+                        "again"
+                    }
+                video + "+" + ctx.await("probe") { "meta" }
+            }
+
+        // Assert
+        assertEquals("video+meta", prepared)
+        assertEquals(0, downloads)
+    }
+}
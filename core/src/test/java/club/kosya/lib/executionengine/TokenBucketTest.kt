@@ -0,0 +1,61 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.TokenBucket
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import java.time.Duration
+import java.time.Instant
+
+class TokenBucketTest {
+    private val start = Instant.parse("2026-01-01T00:00:00Z")
+
+    @Test
+    fun `tokens refill at the configured rate`() {
+        // Arrange
+        val bucket = TokenBucket(capacity = 10.0, refillPerMillis = 0.01)
+
+        // Act
+        val tokens = bucket.refill(0.0, start, start.plusMillis(250))
+
+        // Assert
+        assertEquals(2.5, tokens, 1e-9)
+    }
+
+    @Test
+    fun `refill never exceeds the burst capacity`() {
+        // Arrange
+        val bucket = TokenBucket(capacity = 10.0, refillPerMillis = 0.01)
+
+        // Act
+        val tokens = bucket.refill(8.0, start, start.plus(Duration.ofHours(1)))
+
+        // Assert
+        assertEquals(10.0, tokens)
+    }
+
+    @Test
+    fun `clock going backwards does not drain the bucket`() {
+        // Arrange
+        val bucket = TokenBucket(capacity = 10.0, refillPerMillis = 0.01)
+
+        // Act
+        val tokens = bucket.refill(3.0, start, start.minusSeconds(5))
+
+        // Assert
+        assertEquals(3.0, tokens)
+    }
+
+    @Test
+    fun `wait time covers the missing fraction of a token`() {
+        // Arrange
+        val bucket = TokenBucket(capacity = 5.0, refillPerMillis = 0.001)
+
+        // Act
+        val whenEmpty = bucket.timeUntilToken(0.25)
+        val whenAvailable = bucket.timeUntilToken(1.0)
+
+        // Assert
+        assertEquals(Duration.ofMillis(750), whenEmpty)
+        assertEquals(Duration.ZERO, whenAvailable)
+    }
+}
@@ -0,0 +1,98 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.ExecutedAction
+import club.kosya.lib.executionengine.internal.Execution
+import club.kosya.lib.executionengine.internal.ExecutionFlow
+import club.kosya.lib.executionengine.internal.WarmContext
+import club.kosya.lib.executionengine.internal.WarmContextCache
+import club.kosya.lib.workflow.internal.PreparedWorkflow
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+class WarmContextCacheTest {
+    @Test
+    fun `taking a context removes it from the cache`() {
+        // Arrange
+        val cache = cache(maxEntries = 10)
+        val context = context(1L, resultSize = 10)
+        cache.put(context)
+
+        // Act
+        val first = cache.take(1L)
+        val second = cache.take(1L)
+
+        // Assert
+        assertSame(context, first)
+        assertNull(second)
+    }
+
+    @Test
+    fun `least recently used context is evicted when the entry limit is reached`() {
+        // Arrange
+        val cache = cache(maxEntries = 2)
+        cache.put(context(1L, resultSize = 10))
+        cache.put(context(2L, resultSize = 10))
+
+        // Act
+        cache.put(context(3L, resultSize = 10))
+
+        // Assert
+        assertNull(cache.take(1L))
+        assertNotNull(cache.take(2L))
+        assertNotNull(cache.take(3L))
+    }
+
+    @Test
+    fun `contexts are evicted until the cached weight fits the limit`() {
+        // Arrange
+        val cache = cache(maxEntries = 10, maxWeight = 250)
+        cache.put(context(1L, resultSize = 100))
+        cache.put(context(2L, resultSize = 100))
+
+        // Act
+        cache.put(context(3L, resultSize = 100))
+
+        // Assert
+        assertNull(cache.take(1L))
+        assertNotNull(cache.take(2L))
+        assertNotNull(cache.take(3L))
+    }
+
+    @Test
+    fun `context heavier than the whole cache is not kept`() {
+        // Arrange
+        val cache = cache(maxEntries = 10, maxWeight = 50)
+        cache.put(context(1L, resultSize = 10))
+
+        // Act
+        cache.put(context(2L, resultSize = 100))
+
+        // Assert
+        assertNull(cache.take(2L))
+        assertNotNull(cache.take(1L))
+    }
+
+    private fun cache(
+        maxEntries: Int,
+        maxWeight: Long = Long.MAX_VALUE,
+    ) = WarmContextCache(
+        WorkflowRunrProperties().apply {
+            warmCache.maxEntries = maxEntries
+            warmCache.maxWeight = maxWeight
+        },
+    )
+
+    private fun context(
+        executionId: Long,
+        resultSize: Int,
+    ): WarmContext {
+        val execution =
+            Execution().apply {
+                id = executionId
+                definition = byteArrayOf()
+            }
+        val action = ExecutedAction("0").apply { result = "x".repeat(resultSize) }
+        val workflow = PreparedWorkflow(Any(), Any::class.java.getMethod("toString"), arrayOf())
+        return WarmContext(execution, workflow, ExecutionFlow(executionId.toString(), mutableListOf(action)))
+    }
+}
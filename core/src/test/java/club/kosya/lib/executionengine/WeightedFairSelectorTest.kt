@@ -0,0 +1,58 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.executionengine.internal.WeightedFairSelector
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+class WeightedFairSelectorTest {
+    @Test
+    fun `slots are split evenly between queues with equal weights`() {
+        // Arrange
+        val selector = WeightedFairSelector { 1 }
+
+        // Act
+        val shares = selector.allocate(listOf("transcribe", "sleep"), 10)
+
+        // Assert
+        assertEquals(5, shares["transcribe"])
+        assertEquals(5, shares["sleep"])
+    }
+
+    @Test
+    fun `slots are split proportionally to weights`() {
+        // Arrange
+        val weights = mapOf("interactive" to 3, "batch" to 1)
+        val selector = WeightedFairSelector { weights.getValue(it) }
+
+        // Act
+        val shares = selector.allocate(listOf("batch", "interactive"), 8)
+
+        // Assert
+        assertEquals(6, shares["interactive"])
+        assertEquals(2, shares["batch"])
+    }
+
+    @Test
+    fun `single slot batches alternate between queues over time`() {
+        // Arrange
+        val selector = WeightedFairSelector { 1 }
+
+        // Act
+        val picks = (1..4).map { selector.allocate(listOf("a", "b"), 1).keys.single() }
+
+        // Assert
+        assertEquals(listOf("a", "b", "a", "b"), picks)
+    }
+
+    @Test
+    fun `no queues yield no shares`() {
+        // Arrange
+        val selector = WeightedFairSelector { 1 }
+
+        // Act
+        val shares = selector.allocate(emptyList(), 5)
+
+        // Assert
+        assertTrue(shares.isEmpty())
+    }
+}
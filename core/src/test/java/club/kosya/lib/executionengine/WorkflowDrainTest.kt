@@ -0,0 +1,80 @@
+package club.kosya.lib.executionengine
+
+import club.kosya.lib.deserialization.internal.ObjectDeserializerImpl
+import club.kosya.lib.executionengine.internal.ActionThrottle
+import club.kosya.lib.executionengine.internal.BranchRunner
+import club.kosya.lib.executionengine.internal.Execution
+import club.kosya.lib.executionengine.internal.ExecutionContextImpl
+import club.kosya.lib.executionengine.internal.ExecutionControl
+import club.kosya.lib.executionengine.internal.ExecutionFlow
+import club.kosya.lib.executionengine.internal.ExecutionsRepository
+import club.kosya.lib.executionengine.internal.SleepListener
+import club.kosya.lib.executionengine.internal.StateColumnFlowStore
+import club.kosya.lib.executionengine.internal.WorkflowDrainedException
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.mockito.Mockito.*
+import java.time.LocalDateTime
+import java.util.*
+
+class WorkflowDrainTest {
+    private lateinit var objectMapper: ObjectMapper
+    private lateinit var executions: ExecutionsRepository
+    private lateinit var execution: Execution
+    private lateinit var deserializer: ObjectDeserializerImpl
+    private lateinit var control: ExecutionControl
+
+    @BeforeEach
+    fun setUp() {
+        objectMapper = ObjectMapper().registerModule(JavaTimeModule())
+        executions = mock(ExecutionsRepository::class.java)
+        deserializer = ObjectDeserializerImpl(objectMapper)
+        control = ExecutionControl()
+
+        execution =
+            Execution().apply {
+                id = 1L
+                status = ExecutionStatus.Running
+                queuedAt = LocalDateTime.now()
+                definition = byteArrayOf()
+                params = "{}"
+            }
+
+        `when`(executions.findById(1L)).thenReturn(Optional.of(execution))
+        `when`(executions.save(any(Execution::class.java))).thenReturn(execution)
+    }
+
+    @Test
+    fun `workflow yields at the next action once the node is draining`() {
+        // Arrange
+        val ctx =
+            ExecutionContextImpl(
+                "1",
+                StateColumnFlowStore(executions, objectMapper).open(1L),
+                objectMapper,
+                deserializer,
+                SleepListener.NONE,
+                control,
+                ActionThrottle.NONE,
+                BranchRunner.SEQUENTIAL,
+            )
+        ctx.await("before drain") { "done" }
+        var ranAfterDrain = false
+
+        // Act
+        control.startDraining()
+        assertThrows<WorkflowDrainedException> {
+            ctx.await("after drain") { ranAfterDrain = true }
+        }
+
+        // Assert
+        assertFalse(ranAfterDrain)
+        val flow = objectMapper.readValue(execution.state, ExecutionFlow::class.java)
+        assertEquals(1, flow.actions.size)
+        assertTrue(flow.actions[0].completed)
+    }
+}
@@ -10,15 +10,10 @@ import org.springframework.context.ApplicationContext
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import org.springframework.scheduling.annotation.EnableScheduling
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.Executors
 
 @EnableScheduling
 @Configuration
 class BeansConfig {
-    @Bean
-    fun taskExecutor(): ExecutorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())
-
     @Bean
     fun serviceInstanceProvider(applicationContext: ApplicationContext): ServiceInstanceProvider = SpringInstanceProvider(applicationContext)
 
@@ -0,0 +1,5 @@
+alter table executions
+    add column owner_node varchar(128) null after wake_at;
+
+alter table executions
+    add column lease_expires_at timestamp null after owner_node;
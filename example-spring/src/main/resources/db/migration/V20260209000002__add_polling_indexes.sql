@@ -0,0 +1,3 @@
+create index executions_status_queued_at on executions (status, queued_at);
+
+create index executions_status_wake_at on executions (status, wake_at);
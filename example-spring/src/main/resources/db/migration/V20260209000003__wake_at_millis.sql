@@ -0,0 +1,2 @@
+alter table executions
+    modify column wake_at timestamp(3) null;
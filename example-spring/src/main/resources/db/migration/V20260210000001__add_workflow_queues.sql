@@ -0,0 +1,16 @@
+alter table executions
+    add column workflow_type varchar(255) null after queued_at;
+
+update executions
+set workflow_type = json_unquote(json_extract(convert(definition using utf8mb4), '$.serviceIdentifier.className'));
+
+alter table executions
+    modify column workflow_type varchar(255) not null;
+
+create index executions_status_type_queued_at on executions (status, workflow_type, queued_at);
+
+create table workflow_queues
+(
+    name varchar(255) not null
+        primary key
+);
@@ -0,0 +1 @@
+create index executions_status_lease_expires_at on executions (status, lease_expires_at);
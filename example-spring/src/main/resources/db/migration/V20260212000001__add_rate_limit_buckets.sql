@@ -0,0 +1,7 @@
+create table rate_limit_buckets
+(
+    name        varchar(255) not null
+        primary key,
+    tokens      double       not null,
+    refilled_at timestamp(3) not null
+);
@@ -0,0 +1,16 @@
+create table execution_actions
+(
+    execution_id bigint       not null,
+    action_id    varchar(255) not null,
+    position     int          not null,
+    name         varchar(255) null,
+    result_type  varchar(255) null,
+    result       mediumtext   null,
+    completed    boolean      not null,
+    wake_at      timestamp(3) null,
+    recorded_at  timestamp(3) not null,
+    primary key (execution_id, action_id),
+    constraint execution_actions_execution_fk
+        foreign key (execution_id) references executions (id)
+            on delete cascade
+);
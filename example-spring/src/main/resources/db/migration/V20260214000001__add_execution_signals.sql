@@ -0,0 +1,13 @@
+create table execution_signals
+(
+    execution_id bigint       not null
+        primary key,
+    type         varchar(32)  not null,
+    owner_node   varchar(255) not null,
+    signalled_at timestamp(3) not null,
+    constraint execution_signals_execution_fk
+        foreign key (execution_id) references executions (id)
+            on delete cascade
+);
+
+create index execution_signals_owner_node_idx on execution_signals (owner_node);
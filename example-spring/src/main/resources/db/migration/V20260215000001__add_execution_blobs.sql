@@ -0,0 +1,22 @@
+create table execution_blobs
+(
+    hash       char(64)     not null
+        primary key,
+    content    mediumtext   not null,
+    created_at timestamp(3) not null
+);
+
+create table execution_blob_refs
+(
+    execution_id bigint   not null,
+    hash         char(64) not null,
+    primary key (execution_id, hash),
+    constraint execution_blob_refs_execution_fk
+        foreign key (execution_id) references executions (id)
+            on delete cascade,
+    constraint execution_blob_refs_blob_fk
+        foreign key (hash) references execution_blobs (hash)
+);
+
+alter table execution_actions
+    add column result_ref char(64) null after result;
@@ -0,0 +1,9 @@
+alter table executions
+    modify params mediumblob not null,
+    modify state mediumblob null;
+
+alter table execution_actions
+    modify result mediumblob null;
+
+alter table execution_blobs
+    modify content mediumblob not null;
@@ -0,0 +1,2 @@
+alter table executions
+    add column state_data mediumblob null after state;
@@ -0,0 +1,2 @@
+alter table execution_actions
+    add column scope boolean not null default false after completed;
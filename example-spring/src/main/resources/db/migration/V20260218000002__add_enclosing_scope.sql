@@ -0,0 +1,2 @@
+alter table execution_actions
+    add column enclosing_scope varchar(255) null after scope;